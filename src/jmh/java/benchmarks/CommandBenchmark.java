@@ -0,0 +1,79 @@
+package benchmarks;
+
+import entities.Topic;
+import info.Config;
+import listeners.CommandArgs;
+import listeners.MainEventListener;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Role;
+import net.dv8tion.jda.api.events.message.guild.GuildMessageReceivedEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokenizing command messages, and dispatching them through
+ * MainEventListener from message event to response. Commands run inline on
+ * the calling thread. The commands used do not change any state, so every
+ * invocation takes the same path: a queue lookup, the help embed, a rejected
+ * mentor command and an unknown command.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandBenchmark {
+    @Param({
+        "$position general",
+        "$help",
+        "$kick <@1> general   keeps spamming the queue with the same question",
+        "$nosuchcommand with some arguments"
+    })
+    public String content;
+
+    private MainEventListener listener;
+    private GuildMessageReceivedEvent event;
+
+    @Setup
+    public void setUp() {
+        StandInGuild guild = new StandInGuild(1);
+        guild.addRole(Topic.PREFIX + "general");
+        Role team = guild.addRole("Team 12");
+        Member author = guild.addMember("hacker", false, team);
+
+        listener = new MainEventListener();
+        event = guild.messageEvent(author, content);
+
+        // the first command sets up the guild's Server
+        listener.onGuildMessageReceived(event);
+    }
+
+    /**
+     * Split a message into its command name and arguments.
+     */
+    @Benchmark
+    public CommandArgs tokenize() {
+        return CommandArgs.parse(content, Config.COMMAND_PREFIX);
+    }
+
+    /**
+     * Handle a message event: tokenize, look up the command, check
+     * permissions, run the handler and queue its response.
+     */
+    @Benchmark
+    public void dispatch() {
+        listener.onGuildMessageReceived(event);
+    }
+}
@@ -0,0 +1,80 @@
+package benchmarks;
+
+import entities.PermissionIndex;
+import entities.Server;
+import entities.Topic;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Role;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admin and mentor checks for a member holding a given number of roles. The
+ * topic role is the member's last role, so checks that scan roles have to
+ * look at every one of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermissionBenchmark {
+    @Param({"1", "10", "50", "250"})
+    public int roleCount;
+
+    private PermissionIndex permissions;
+    private Topic topic;
+    private Member member;
+
+    @Setup
+    public void setUp() {
+        StandInGuild guild = new StandInGuild(1);
+        Role[] roles = new Role[roleCount];
+        for (int i = 0; i < roleCount - 1; i++) {
+            roles[i] = guild.addRole("Team " + i);
+        }
+        roles[roleCount - 1] = guild.addRole(Topic.PREFIX + "general");
+
+        Server server = new Server(guild.getGuild());
+        permissions = server.getPermissions();
+        topic = server.getTopic("general").orElseThrow();
+        member = guild.addMember("mentor", false, roles);
+    }
+
+    @Benchmark
+    public boolean isAdmin() {
+        return permissions.isAdmin(member);
+    }
+
+    @Benchmark
+    public boolean isMentor() {
+        return permissions.isMentor(member);
+    }
+
+    @Benchmark
+    public boolean isMentorForTopic() {
+        return permissions.isMentor(member, topic);
+    }
+
+    /**
+     * Check a member whose cached capabilities were just dropped, as after
+     * one of their roles changed.
+     */
+    @Benchmark
+    public boolean isAdminAfterRoleChange() {
+        permissions.invalidateMember(member.getIdLong());
+        return permissions.isAdmin(member);
+    }
+}
@@ -0,0 +1,66 @@
+package benchmarks;
+
+import entities.QueueMember;
+import entities.Server;
+import entities.Topic;
+import listeners.QueuePages;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering a page of `$showqueue`. Every queued member is cached, so pages
+ * render without waiting on Discord and only the listing itself is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShowQueueBenchmark {
+    @Param({"10", "1000", "10000"})
+    public int queueSize;
+
+    private QueuePages listing;
+    private int lastPage;
+
+    @Setup
+    public void setUp() {
+        StandInGuild guild = new StandInGuild(1);
+        guild.addRole(Topic.PREFIX + "general");
+        Server server = new Server(guild.getGuild());
+        Topic topic = server.getTopic("general").orElseThrow();
+
+        for (int i = 0; i < queueSize; i++) {
+            Member member = guild.addMember("mentee" + i, false);
+            topic.addToQueue(new QueueMember(member.getIdLong(),
+                "Question " + i + ": our React app renders twice and the API is rate limiting us"));
+        }
+
+        listing = new QueuePages(server, topic);
+        lastPage = listing.getPageCount();
+    }
+
+    @Benchmark
+    public MessageEmbed firstPage() {
+        return listing.render(1).join();
+    }
+
+    @Benchmark
+    public MessageEmbed lastPage() {
+        return listing.render(lastPage).join();
+    }
+}
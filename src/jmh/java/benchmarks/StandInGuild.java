@@ -0,0 +1,186 @@
+package benchmarks;
+
+import entities.Server;
+import info.Config;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.Category;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.Role;
+import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.events.message.guild.GuildMessageReceivedEvent;
+import net.dv8tion.jda.api.requests.restaction.MessageAction;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A guild that only exists in memory, with one text channel and the mentoring
+ * category already set up. Messages sent to the channel are dropped, so the
+ * bot's responses cost nothing beyond building them.
+ */
+final class StandInGuild {
+    private static final JDA jda = StandIns.of(JDA.class).build();
+
+    private final Guild guild;
+    private final TextChannel channel;
+    private final List<Role> roles = new ArrayList<>();
+
+    /**
+     * Map from member IDs to Members
+     */
+    private final ConcurrentHashMap<Long, Member> members = new ConcurrentHashMap<>();
+    private final AtomicLong nextId;
+
+    /**
+     * Constructs an empty guild. Config is set up so that Servers for this
+     * guild keep their journal in memory, do not create pooled rooms and run
+     * commands inline.
+     *
+     * @param id The guild's ID
+     */
+    StandInGuild(long id) {
+        this.nextId = new AtomicLong(id * 1_000_000);
+
+        Config.JOURNAL_DIR = "";
+        Config.ROOM_POOL_MIN = 0;
+        Config.DISPATCH_MODE = "inline";
+
+        MessageAction sent = StandIns.of(MessageAction.class)
+            .returns("submit", CompletableFuture.completedFuture(null))
+            .returns("queue", null)
+            .build();
+
+        Category category = StandIns.of(Category.class)
+            .returns("getIdLong", nextId.incrementAndGet())
+            .returns("getName", Server.MENTORING_CATEGORY_NAME)
+            .returns("getTextChannels", List.of())
+            .returns("getVoiceChannels", List.of())
+            .build();
+
+        guild = StandIns.of(Guild.class)
+            .returns("getIdLong", id)
+            .returns("getId", Long.toString(id))
+            .returns("getName", "Guild " + id)
+            .returns("getCategoriesByName", List.of(category))
+            .answer("getRoles", args -> List.copyOf(roles))
+            .answer("getMemberById", args -> members.get(toId(args[0])))
+            .answer("getTextChannelById", args -> null)
+            .answer("getVoiceChannelById", args -> null)
+            .build();
+
+        long channelId = nextId.incrementAndGet();
+        channel = StandIns.of(TextChannel.class)
+            .returns("getIdLong", channelId)
+            .returns("getId", Long.toString(channelId))
+            .returns("getName", "help-desk")
+            .returns("getGuild", guild)
+            .returns("sendMessage", sent)
+            .build();
+    }
+
+    /**
+     * Add a role to this guild.
+     *
+     * @param name The role's name
+     *
+     * @return The new Role
+     */
+    Role addRole(String name) {
+        long roleId = nextId.incrementAndGet();
+        Role role = StandIns.of(Role.class)
+            .returns("getIdLong", roleId)
+            .returns("getId", Long.toString(roleId))
+            .returns("getName", name)
+            .returns("getAsMention", "<@&" + roleId + ">")
+            .returns("getGuild", guild)
+            .build();
+        roles.add(role);
+        return role;
+    }
+
+    /**
+     * Add a member to this guild.
+     *
+     * @param name The member's name
+     * @param administrator True if the member has the Administrator permission
+     * @param memberRoles The member's roles
+     *
+     * @return The new Member
+     */
+    Member addMember(String name, boolean administrator, Role... memberRoles) {
+        long memberId = nextId.incrementAndGet();
+        List<Role> roleList = List.copyOf(Arrays.asList(memberRoles));
+        Member member = StandIns.of(Member.class)
+            .returns("getIdLong", memberId)
+            .returns("getId", Long.toString(memberId))
+            .returns("getEffectiveName", name)
+            .returns("getAsMention", "<@" + memberId + ">")
+            .returns("getRoles", roleList)
+            .returns("getGuild", guild)
+            .answer("hasPermission", args -> administrator || !requiresAdministrator(args))
+            .build();
+        members.put(memberId, member);
+        return member;
+    }
+
+    /**
+     * Create the event for a member sending a message to this guild's channel.
+     *
+     * @param author The member sending the message
+     * @param content The message's content
+     *
+     * @return The message event
+     */
+    GuildMessageReceivedEvent messageEvent(Member author, String content) {
+        long messageId = nextId.incrementAndGet();
+        Message message = StandIns.of(Message.class)
+            .returns("getIdLong", messageId)
+            .returns("getContentRaw", content)
+            .returns("getContentDisplay", content)
+            .returns("getMember", author)
+            .returns("getMentionedMembers", List.of())
+            .returns("isWebhookMessage", false)
+            .returns("getTextChannel", channel)
+            .returns("getChannel", channel)
+            .returns("getGuild", guild)
+            .build();
+        return new GuildMessageReceivedEvent(jda, 0, message);
+    }
+
+    /**
+     * Get the Guild stand-in.
+     *
+     * @return This guild
+     */
+    Guild getGuild() {
+        return guild;
+    }
+
+    private static long toId(Object id) {
+        return id instanceof String ? Long.parseLong((String) id) : (Long) id;
+    }
+
+    /**
+     * Check if a permission check asks for the Administrator permission.
+     *
+     * @param args The arguments of a hasPermission call
+     *
+     * @return True if Administrator is among the requested permissions
+     */
+    private static boolean requiresAdministrator(Object[] args) {
+        for (Object arg : args) {
+            if (arg instanceof Permission[] && Arrays.asList((Permission[]) arg).contains(Permission.ADMINISTRATOR)) {
+                return true;
+            }
+            if (arg == Permission.ADMINISTRATOR) return true;
+        }
+        return false;
+    }
+}
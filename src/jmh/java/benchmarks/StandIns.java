@@ -0,0 +1,98 @@
+package benchmarks;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.function.Function;
+
+/**
+ * Builds in-memory stand-ins for JDA interfaces. JDA's entity interfaces are
+ * far too large to implement by hand, so a stand-in is a dynamic proxy that
+ * only answers the methods a benchmark sets up. Calling any other method
+ * throws, so a benchmark never silently measures a code path it did not mean
+ * to.
+ */
+final class StandIns {
+    private StandIns() {
+    }
+
+    /**
+     * Start building a stand-in.
+     *
+     * @param type The interface to stand in for
+     * @param <T> The interface's type
+     *
+     * @return A builder for the stand-in
+     */
+    static <T> Builder<T> of(Class<T> type) {
+        return new Builder<>(type);
+    }
+
+    /**
+     * Collects the answers a stand-in gives.
+     *
+     * @param <T> The interface the stand-in implements
+     */
+    static final class Builder<T> {
+        private final Class<T> type;
+
+        /**
+         * Map from method names to their answers. Overloads share an answer.
+         */
+        private final HashMap<String, Function<Object[], Object>> answers = new HashMap<>();
+
+        private Builder(Class<T> type) {
+            this.type = type;
+        }
+
+        /**
+         * Make a method always return the same value.
+         *
+         * @param method The method's name
+         * @param value The value to return
+         *
+         * @return This builder
+         */
+        Builder<T> returns(String method, Object value) {
+            return answer(method, args -> value);
+        }
+
+        /**
+         * Make a method compute its result from its arguments.
+         *
+         * @param method The method's name
+         * @param answer The function computing the result
+         *
+         * @return This builder
+         */
+        Builder<T> answer(String method, Function<Object[], Object> answer) {
+            answers.put(method, answer);
+            return this;
+        }
+
+        /**
+         * Create the stand-in.
+         *
+         * @return The stand-in
+         */
+        T build() {
+            String name = type.getSimpleName();
+            HashMap<String, Function<Object[], Object>> answers = new HashMap<>(this.answers);
+            Object standIn = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+                if (method.getDeclaringClass() == Object.class) {
+                    return switch (method.getName()) {
+                        case "equals" -> proxy == args[0];
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        default -> name + " stand-in";
+                    };
+                }
+
+                Function<Object[], Object> answer = answers.get(method.getName());
+                if (answer == null) {
+                    throw new UnsupportedOperationException(name + "." + method.getName() + " is not set up");
+                }
+                return answer.apply(args == null ? new Object[0] : args);
+            });
+            return type.cast(standIn);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package benchmarks;
+
+import entities.QueueMember;
+import entities.Server;
+import entities.Topic;
+import net.dv8tion.jda.api.entities.Member;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queue operations on a single topic. Every benchmark leaves the queue at
+ * the size it started with, so the queue size parameter holds for the whole
+ * run. Journaling happens in memory, as with MENTORBOT_JOURNAL_DIR unset.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopicQueueBenchmark {
+    private static final String MESSAGE = "My websocket keeps dropping after every deploy";
+
+    @Param({"10", "100", "1000", "10000"})
+    public int queueSize;
+
+    private Topic topic;
+    private Member[] queued;
+    private Member newcomer;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        StandInGuild guild = new StandInGuild(1);
+        guild.addRole(Topic.PREFIX + "general");
+        Server server = new Server(guild.getGuild());
+        topic = server.getTopic("general").orElseThrow();
+
+        queued = new Member[queueSize];
+        for (int i = 0; i < queueSize; i++) {
+            queued[i] = guild.addMember("mentee" + i, false);
+            topic.addToQueue(new QueueMember(queued[i].getIdLong(), MESSAGE));
+        }
+        newcomer = guild.addMember("newcomer", false);
+    }
+
+    /**
+     * Join the back of the queue, then leave it again.
+     */
+    @Benchmark
+    public boolean addAndLeave() {
+        topic.addToQueue(new QueueMember(newcomer.getIdLong(), MESSAGE));
+        return topic.removeFromQueue(newcomer);
+    }
+
+    /**
+     * Check for a member who is queued, cycling through the whole queue.
+     */
+    @Benchmark
+    public boolean contains() {
+        next = next + 1 == queueSize ? 0 : next + 1;
+        return topic.isInQueue(queued[next]);
+    }
+
+    /**
+     * Check for a member who is not queued.
+     */
+    @Benchmark
+    public boolean containsMissing() {
+        return topic.isInQueue(newcomer);
+    }
+
+    /**
+     * Remove a random queued member, then put them back at the back of the
+     * queue. Positions stay uniformly random as the queue rotates.
+     */
+    @Benchmark
+    public boolean removeAndRequeue() {
+        Member member = queued[ThreadLocalRandom.current().nextInt(queueSize)];
+        topic.removeFromQueue(member);
+        return topic.addToQueue(new QueueMember(member.getIdLong(), MESSAGE));
+    }
+
+    /**
+     * Take the head of the queue, as $ready does, then requeue them at the
+     * back.
+     */
+    @Benchmark
+    public QueueMember popAndRequeue() {
+        QueueMember head = topic.popFromQueue();
+        topic.addToQueue(head);
+        return head;
+    }
+
+    /**
+     * Look up a random member's position, as $position does.
+     */
+    @Benchmark
+    public int position() {
+        return topic.getQueuePosition(queued[ThreadLocalRandom.current().nextInt(queueSize)]);
+    }
+}
@@ -0,0 +1,424 @@
+package entities;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * An insertion-ordered queue of QueueMembers keyed by member ID.
+ *
+ * Entries are kept in a doubly-linked list with a hash index on top, so
+ * membership checks, removal, size and popping the head take constant time.
+ * Every entry is also given a slot number in queue order, and a Fenwick tree
+ * over the slots counts the live entries in front of any slot. This gives a
+ * member's position in O(log n) without copying the queue, and finds the
+ * entry at any position just as quickly.
+ */
+public class MemberQueue implements Iterable<QueueMember> {
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * A single queue entry.
+     */
+    private static class Node {
+        private final QueueMember member;
+        private Node previous;
+        private Node next;
+        private int slot;
+
+        private Node(QueueMember member) {
+            this.member = member;
+        }
+    }
+
+    /**
+     * Map from member IDs to their queue entries
+     */
+    private HashMap<Long, Node> index = new HashMap<>();
+    private Node head;
+    private Node tail;
+
+    /**
+     * Fenwick tree of occupied slots. Index 0 is unused.
+     */
+    private int[] tree = new int[MIN_CAPACITY + 1];
+
+    /**
+     * The entry occupying each slot, or null for free slots
+     */
+    private Node[] slots = new Node[MIN_CAPACITY];
+
+    /**
+     * Incremented on every change to the queue
+     */
+    private int version;
+
+    /**
+     * The slot handed out to the next entry added to the back of the queue
+     */
+    private int nextBackSlot = MIN_CAPACITY / 2;
+
+    /**
+     * The slot handed out to the next entry added to the front of the queue
+     */
+    private int nextFrontSlot = MIN_CAPACITY / 2 - 1;
+
+    /**
+     * Add a QueueMember to the back of the queue. Does nothing if the member
+     * is already in the queue.
+     *
+     * @param member The QueueMember to add
+     *
+     * @return True if the member was added, false if they were already queued
+     */
+    public boolean addLast(QueueMember member) {
+        long id = member.getMemberId();
+        if (index.containsKey(id)) return false;
+
+        if (nextBackSlot >= capacity()) compact();
+
+        Node node = new Node(member);
+        node.slot = nextBackSlot++;
+        slots[node.slot] = node;
+        node.previous = tail;
+        if (tail == null) {
+            head = node;
+        } else {
+            tail.next = node;
+        }
+        tail = node;
+
+        index.put(id, node);
+        update(node.slot, 1);
+        version++;
+        return true;
+    }
+
+    /**
+     * Add a QueueMember to the front of the queue. Does nothing if the member
+     * is already in the queue.
+     *
+     * @param member The QueueMember to add
+     *
+     * @return True if the member was added, false if they were already queued
+     */
+    public boolean addFirst(QueueMember member) {
+        long id = member.getMemberId();
+        if (index.containsKey(id)) return false;
+
+        if (nextFrontSlot < 0) compact();
+
+        Node node = new Node(member);
+        node.slot = nextFrontSlot--;
+        slots[node.slot] = node;
+        node.next = head;
+        if (head == null) {
+            tail = node;
+        } else {
+            head.previous = node;
+        }
+        head = node;
+
+        index.put(id, node);
+        update(node.slot, 1);
+        version++;
+        return true;
+    }
+
+    /**
+     * Add a QueueMember behind everyone who joined no later than they did,
+     * e.g. a member moved from another queue who keeps their original join
+     * time. The position is found by walking from the back, so members who
+     * joined recently are placed quickly. Inserting anywhere but the front or
+     * back renumbers every slot, which takes O(n). Does nothing if the member
+     * is already in the queue.
+     *
+     * @param member The QueueMember to add
+     *
+     * @return True if the member was added, false if they were already queued
+     */
+    public boolean addByEnqueuedAt(QueueMember member) {
+        long id = member.getMemberId();
+        if (index.containsKey(id)) return false;
+
+        Node previous = tail;
+        while (previous != null && previous.member.getEnqueuedAt() > member.getEnqueuedAt()) {
+            previous = previous.previous;
+        }
+        if (previous == tail) return addLast(member);
+        if (previous == null) return addFirst(member);
+
+        Node node = new Node(member);
+        node.previous = previous;
+        node.next = previous.next;
+        previous.next.previous = node;
+        previous.next = node;
+
+        // slots are consecutive, so make room by renumbering everyone in queue order
+        index.put(id, node);
+        compact();
+        version++;
+        return true;
+    }
+
+    /**
+     * Remove the member with the given ID from their position in the queue.
+     *
+     * @param memberId The ID of the member to remove
+     *
+     * @return The removed QueueMember, or null if they were not queued
+     */
+    public QueueMember remove(long memberId) {
+        Node node = index.remove(memberId);
+        if (node == null) return null;
+
+        unlink(node);
+        return node.member;
+    }
+
+    /**
+     * Remove and return the QueueMember at the front of the queue.
+     *
+     * @return The QueueMember at the front of the queue, or null if the queue
+     *     is empty
+     */
+    public QueueMember poll() {
+        if (head == null) return null;
+
+        Node node = head;
+        index.remove(node.member.getMemberId());
+        unlink(node);
+        return node.member;
+    }
+
+    /**
+     * Remove everyone from the queue. The index and slot arrays are replaced
+     * rather than emptied, so this takes constant time however long the queue
+     * was.
+     */
+    public void clear() {
+        index = new HashMap<>();
+        head = null;
+        tail = null;
+        tree = new int[MIN_CAPACITY + 1];
+        slots = new Node[MIN_CAPACITY];
+        nextBackSlot = MIN_CAPACITY / 2;
+        nextFrontSlot = nextBackSlot - 1;
+        version++;
+    }
+
+    /**
+     * Get the QueueMember at the front of the queue without removing them.
+     *
+     * @return The QueueMember at the front of the queue, or null if the queue
+     *     is empty
+     */
+    public QueueMember peek() {
+        return head == null ? null : head.member;
+    }
+
+    /**
+     * Get the queue entry of the member with the given ID.
+     *
+     * @param memberId The ID of the member to look up
+     *
+     * @return The member's QueueMember, or null if they are not in the queue
+     */
+    public QueueMember get(long memberId) {
+        Node node = index.get(memberId);
+        return node == null ? null : node.member;
+    }
+
+    /**
+     * Check if the member with the given ID is in the queue.
+     *
+     * @param memberId The ID of the member to check
+     *
+     * @return True if the member is in the queue, false otherwise
+     */
+    public boolean contains(long memberId) {
+        return index.containsKey(memberId);
+    }
+
+    /**
+     * Get the 1-based position of the member with the given ID.
+     *
+     * @param memberId The ID of the member to look up
+     *
+     * @return The member's position, or 0 if they are not in the queue
+     */
+    public int positionOf(long memberId) {
+        Node node = index.get(memberId);
+        return node == null ? 0 : prefixCount(node.slot);
+    }
+
+    /**
+     * Copy part of the queue into a list, front first. Finding the first
+     * entry takes O(log n), so later pages cost no more than the first.
+     *
+     * @param offset The 0-based position of the first entry to copy
+     * @param count The most entries to copy
+     *
+     * @return The QueueMembers from the given position on
+     */
+    public List<QueueMember> slice(int offset, int count) {
+        List<QueueMember> list = new ArrayList<>(Math.max(0, Math.min(count, index.size() - offset)));
+        if (offset < 0 || offset >= index.size()) return list;
+
+        for (Node node = slots[findSlot(offset + 1)]; node != null && list.size() < count; node = node.next) {
+            list.add(node.member);
+        }
+        return list;
+    }
+
+    /**
+     * Get a number that changes whenever the queue changes, so that views of
+     * the queue can tell if they are out of date.
+     *
+     * @return The queue's version
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the number of members in the queue.
+     *
+     * @return The size of the queue
+     */
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * Check if the queue is empty.
+     *
+     * @return True if nobody is in the queue
+     */
+    public boolean isEmpty() {
+        return head == null;
+    }
+
+    /**
+     * Copy the queue into a list, front first.
+     *
+     * @return The QueueMembers in this queue
+     */
+    public List<QueueMember> toList() {
+        List<QueueMember> list = new ArrayList<>(index.size());
+        for (QueueMember member : this) {
+            list.add(member);
+        }
+        return list;
+    }
+
+    @Override
+    public Iterator<QueueMember> iterator() {
+        return new Iterator<>() {
+            private Node next = head;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public QueueMember next() {
+                if (next == null) throw new NoSuchElementException();
+                QueueMember member = next.member;
+                next = next.next;
+                return member;
+            }
+        };
+    }
+
+    /**
+     * Unlink a node whose index entry has already been removed.
+     *
+     * @param node The node to unlink
+     */
+    private void unlink(Node node) {
+        if (node.previous == null) {
+            head = node.next;
+        } else {
+            node.previous.next = node.next;
+        }
+        if (node.next == null) {
+            tail = node.previous;
+        } else {
+            node.next.previous = node.previous;
+        }
+        node.previous = null;
+        node.next = null;
+
+        update(node.slot, -1);
+        slots[node.slot] = null;
+        version++;
+
+        // an empty queue can start handing out slots from the middle again
+        if (head == null) {
+            nextBackSlot = capacity() / 2;
+            nextFrontSlot = nextBackSlot - 1;
+        }
+    }
+
+    /**
+     * Renumber all live entries into the middle of a (possibly larger) slot
+     * range. Runs in O(n), but only once the free slots on one side have been
+     * used up, so adds stay amortised O(log n).
+     */
+    private void compact() {
+        int size = index.size();
+        int capacity = Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, size * 4) - 1) << 1);
+        tree = new int[capacity + 1];
+        slots = new Node[capacity];
+
+        int slot = (capacity - size) / 2;
+        nextFrontSlot = slot - 1;
+        for (Node node = head; node != null; node = node.next) {
+            node.slot = slot++;
+            slots[node.slot] = node;
+            update(node.slot, 1);
+        }
+        nextBackSlot = slot;
+    }
+
+    private int capacity() {
+        return tree.length - 1;
+    }
+
+    private void update(int slot, int delta) {
+        for (int i = slot + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * Find the slot of the k-th live entry by descending the Fenwick tree.
+     *
+     * @param k The 1-based position of the entry
+     *
+     * @return The entry's slot
+     */
+    private int findSlot(int k) {
+        int position = 0;
+        for (int step = Integer.highestOneBit(capacity()); step > 0; step >>= 1) {
+            int next = position + step;
+            if (next < tree.length && tree[next] < k) {
+                position = next;
+                k -= tree[next];
+            }
+        }
+        return position;
+    }
+
+    private int prefixCount(int slot) {
+        int count = 0;
+        for (int i = slot + 1; i > 0; i -= i & -i) {
+            count += tree[i];
+        }
+        return count;
+    }
+}
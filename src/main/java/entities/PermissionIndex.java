@@ -0,0 +1,160 @@
+package entities;
+
+import info.Config;
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Role;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches what each role and member of a guild is allowed to do, so that
+ * permission checks do not compare role names on every command.
+ *
+ * Role capabilities are computed once per role, and each member's
+ * capabilities are computed once from their roles. Both are kept up to date
+ * by the role and member events forwarded from the event listener.
+ */
+public class PermissionIndex {
+    private static final int ADMIN = 1;
+    private static final int MENTOR = 1 << 1;
+
+    /**
+     * What a single member can do.
+     */
+    private static class Capabilities {
+        private final int flags;
+
+        /**
+         * The IDs of the member's roles, sorted for binary search
+         */
+        private final long[] roleIds;
+
+        private Capabilities(int flags, long[] roleIds) {
+            this.flags = flags;
+            this.roleIds = roleIds;
+        }
+    }
+
+    /**
+     * Map from role IDs to capability flags
+     */
+    private final ConcurrentHashMap<Long, Integer> roles = new ConcurrentHashMap<>();
+
+    /**
+     * Map from member IDs to their capabilities
+     */
+    private final ConcurrentHashMap<Long, Capabilities> members = new ConcurrentHashMap<>();
+
+    /**
+     * Bumped on every invalidation before the cache is cleared, so that a
+     * lookup racing with an event can tell it must not keep capabilities
+     * computed from the old roles
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * Check if a member has administrator permissions or an administrator
+     * role.
+     *
+     * @param member The Member to check
+     *
+     * @return True if the Member is an admin, false otherwise
+     */
+    public boolean isAdmin(Member member) {
+        return (capabilitiesOf(member).flags & ADMIN) != 0;
+    }
+
+    /**
+     * Check if a member is a mentor for any topic.
+     *
+     * @param member The Member to check
+     *
+     * @return True if the Member is a mentor, false otherwise
+     */
+    public boolean isMentor(Member member) {
+        return (capabilitiesOf(member).flags & MENTOR) != 0;
+    }
+
+    /**
+     * Check if a member is a mentor for a topic.
+     *
+     * @param member The Member to check
+     * @param topic The Topic to check
+     *
+     * @return True if the Member has the topic's role, false otherwise
+     */
+    public boolean isMentor(Member member, Topic topic) {
+        return Arrays.binarySearch(capabilitiesOf(member).roleIds, topic.getRole().getIdLong()) >= 0;
+    }
+
+    /**
+     * Forget a member's cached capabilities, e.g. after their roles changed
+     * or they left the guild.
+     *
+     * @param memberId The ID of the member
+     */
+    public void invalidateMember(long memberId) {
+        generation.incrementAndGet();
+        members.remove(memberId);
+    }
+
+    /**
+     * Recompute a role's capabilities after it was created, renamed or had
+     * its permissions changed. Every member's capabilities are dropped, since
+     * any of them may hold the role.
+     *
+     * @param role The Role that changed
+     */
+    public void updateRole(Role role) {
+        generation.incrementAndGet();
+        roles.put(role.getIdLong(), capabilitiesOf(role));
+        members.clear();
+    }
+
+    /**
+     * Forget a deleted role.
+     *
+     * @param roleId The ID of the deleted role
+     */
+    public void removeRole(long roleId) {
+        generation.incrementAndGet();
+        roles.remove(roleId);
+        members.clear();
+    }
+
+    private Capabilities capabilitiesOf(Member member) {
+        Capabilities capabilities = members.get(member.getIdLong());
+        if (capabilities != null) return capabilities;
+
+        long startGeneration = generation.get();
+        List<Role> memberRoles = member.getRoles();
+        long[] roleIds = new long[memberRoles.size()];
+        int flags = member.hasPermission(Permission.ADMINISTRATOR) ? ADMIN : 0;
+        for (int i = 0; i < roleIds.length; i++) {
+            Role role = memberRoles.get(i);
+            roleIds[i] = role.getIdLong();
+            flags |= roles.computeIfAbsent(roleIds[i], id -> capabilitiesOf(role));
+        }
+        Arrays.sort(roleIds);
+
+        capabilities = new Capabilities(flags, roleIds);
+        members.put(member.getIdLong(), capabilities);
+
+        // an invalidation may have run between computing and caching; its removal came too early, so redo it
+        if (generation.get() != startGeneration) {
+            members.remove(member.getIdLong(), capabilities);
+        }
+        return capabilities;
+    }
+
+    private static int capabilitiesOf(Role role) {
+        int flags = 0;
+        if (Config.ADMIN_ROLES.contains(role.getName())) flags |= ADMIN;
+        if (role.getName().startsWith(Topic.PREFIX)) flags |= MENTOR;
+        return flags;
+    }
+}
@@ -0,0 +1,97 @@
+package entities;
+
+import info.Config;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * The fronts of a server's topic queues, ordered by how long they have
+ * waited. Each topic updates its entry whenever its queue changes, so the
+ * longest-waiting mentee across all topics is found in O(log topics) instead
+ * of by looking at every queue.
+ *
+ * An entry's key is when its mentee joined, moved earlier by a head start for
+ * short queues (see Config.READY_SHORT_QUEUE_BONUS_SECONDS). The key does not
+ * change while the queue stays the same, so the order only needs updating on
+ * queue changes.
+ */
+class QueueHeads {
+    /**
+     * A topic whose queue is not empty.
+     */
+    private static class Entry {
+        private final Topic topic;
+        private final long key;
+
+        private Entry(Topic topic, long key) {
+            this.topic = topic;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Entries by key, ties broken by topic name so that two topics never
+     * compare equal
+     */
+    private final TreeSet<Entry> ordered = new TreeSet<>(Comparator.<Entry>comparingLong(e -> e.key)
+        .thenComparing(e -> e.topic.getName().toLowerCase()));
+
+    /**
+     * Map from topics to their current entries
+     */
+    private final HashMap<Topic, Entry> entries = new HashMap<>();
+
+    /**
+     * Record the front of a topic's queue after it changed. Topics call this
+     * while holding their queue's lock, so updates for a topic arrive in order.
+     *
+     * @param topic The Topic whose queue changed
+     * @param head The QueueMember now at the front, or null if the queue is empty
+     * @param size The number of members in the queue
+     */
+    synchronized void update(Topic topic, QueueMember head, int size) {
+        Entry old = entries.get(topic);
+        if (head == null) {
+            if (old != null) remove(topic);
+            return;
+        }
+
+        long key = head.getEnqueuedAt() - Config.READY_SHORT_QUEUE_BONUS_SECONDS * 1000L / size;
+        if (old != null) {
+            if (old.key == key) return;
+            ordered.remove(old);
+        }
+        Entry entry = new Entry(topic, key);
+        ordered.add(entry);
+        entries.put(topic, entry);
+    }
+
+    /**
+     * Forget a topic, e.g. once it is deleted.
+     *
+     * @param topic The Topic to forget
+     */
+    synchronized void remove(Topic topic) {
+        Entry entry = entries.remove(topic);
+        if (entry != null) ordered.remove(entry);
+    }
+
+    /**
+     * Find the topic whose front mentee should be served next. Topics are
+     * visited in key order, so an admin or a mentor for the first topic costs
+     * O(log topics); a mentor only skips the topics they do not mentor.
+     *
+     * @param eligible Whether the mentor may take mentees from a topic
+     *
+     * @return The Topic, or null if every queue the mentor may serve is empty
+     */
+    synchronized Topic first(Predicate<Topic> eligible) {
+        for (Entry entry : ordered) {
+            if (eligible.test(entry.topic)) return entry.topic;
+        }
+        return null;
+    }
+}
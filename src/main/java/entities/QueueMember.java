@@ -1,39 +1,50 @@
 package entities;
 
-import net.dv8tion.jda.api.entities.Member;
-
 /**
- * Describes a member of a topic queue.
+ * Describes a member of a topic queue. Only the member's ID is stored, so a
+ * queue entry stays small and does not depend on JDA's member cache; the
+ * Member itself is resolved through the Server when it needs to be shown.
  */
 public class QueueMember {
-    private final Member member;
+    private final long memberId;
+    private final long enqueuedAt;
     private final String message;
 
     /**
      * Constructs a new QueueMember object.
-     * @param member The member that this object represents
+     * @param memberId The ID of the member that this object represents
      * @param message The member's queue message
+     * @param enqueuedAt When the member joined the queue, in epoch milliseconds
      */
-    public QueueMember(Member member, String message) {
-        this.member = member;
+    public QueueMember(long memberId, String message, long enqueuedAt) {
+        this.memberId = memberId;
         this.message = message;
+        this.enqueuedAt = enqueuedAt;
     }
 
     /**
-     * Constructs a new QueueMember object without a message. Useful for
-     * checking Member equality.
-     * @param member The member that this object represents
+     * Constructs a new QueueMember object for a member joining the queue now.
+     * @param memberId The ID of the member that this object represents
+     * @param message The member's queue message
      */
-    public QueueMember(Member member) {
-        this(member, null);
+    public QueueMember(long memberId, String message) {
+        this(memberId, message, System.currentTimeMillis());
     }
 
     /**
-     * Gets the member represented by this object.
-     * @return This object's member
+     * Gets the ID of the member represented by this object.
+     * @return This object's member ID
      */
-    public Member getMember() {
-        return member;
+    public long getMemberId() {
+        return memberId;
+    }
+
+    /**
+     * Gets the time this member joined the queue.
+     * @return The time this member joined, in epoch milliseconds
+     */
+    public long getEnqueuedAt() {
+        return enqueuedAt;
     }
 
     /**
@@ -44,14 +55,24 @@ public class QueueMember {
         return message;
     }
 
+    /**
+     * Gets a mention for this member that can be used without resolving the
+     * Member.
+     * @return This member's mention
+     */
+    public String getAsMention() {
+        return "<@" + memberId + ">";
+    }
+
     @Override
     public boolean equals(Object obj) {
-        if (obj instanceof Member) {
-            return member.equals(obj);
-        } else if (obj instanceof QueueMember) {
-            return member.equals(((QueueMember)obj).member);
-        } else {
-            return super.equals(obj);
-        }
+        if (this == obj) return true;
+        if (!(obj instanceof QueueMember)) return false;
+        return memberId == ((QueueMember) obj).memberId;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(memberId);
     }
 }
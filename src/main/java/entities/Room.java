@@ -2,55 +2,190 @@ package entities;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Optional;
+import java.util.EnumSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import info.BotResponses;
 import info.Config;
+import metrics.Metrics;
+import metrics.Metrics.RestCall;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.Category;
 import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.GuildChannel;
 import net.dv8tion.jda.api.entities.IPermissionHolder;
 import net.dv8tion.jda.api.entities.Invite;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.PermissionOverride;
 import net.dv8tion.jda.api.entities.Role;
 import net.dv8tion.jda.api.entities.TextChannel;
 import net.dv8tion.jda.api.entities.VoiceChannel;
+import net.dv8tion.jda.api.managers.ChannelManager;
+import net.dv8tion.jda.api.requests.restaction.ChannelAction;
 import net.dv8tion.jda.api.requests.restaction.InviteAction;
 
 /**
  * A logical group for a topic's text and voice channels. All mentor-mentee
  * interactions occur within a mentoring room.
+ *
+ * Rooms are created locked and kept in their topic's RoomPool until a mentor
+ * needs one. Finished rooms are recycled rather than deleted.
  */
 public class Room {
-    private final Category category;
     private final String name;
+    private final int number;
+    private final Topic topic;
     private final TextChannel textChannel;
     private final VoiceChannel voiceChannel;
 
-    private static int nextRoomNumber = 1;
+    /**
+     * Most messages a finished room may hold and still be recycled
+     */
+    private static final int PURGE_LIMIT = 100;
+
+    /**
+     * Largest room number that is reserved when a room is restored. Every
+     * room is two channels in the mentoring category, and room numbers are
+     * taken lowest first, so no topic can ever have handed out a larger one.
+     */
+    private static final int MAX_RESTORED_NUMBER = Server.CATEGORY_CHANNEL_LIMIT / 2;
+
+    private static final int INVITE_MAX_AGE_SECONDS = 5 * 60;
+    private static final int INVITE_MAX_USES = 5;
+
+    /**
+     * How long before its expiry a cached invite is replaced
+     */
+    private static final long INVITE_REFRESH_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    /**
+     * Longest time opening a room waits for its first invite, so a slow
+     * invite request does not hold up the mentor
+     */
+    private static final long INVITE_WAIT_MILLIS = 500;
+
+    /**
+     * A voice channel invite and how much of it is left.
+     */
+    private static class CachedInvite {
+        private final Invite invite;
+        private final long expiresAt;
+        private int remainingUses;
+
+        private CachedInvite(Invite invite, long expiresAt, int remainingUses) {
+            this.invite = invite;
+            this.expiresAt = expiresAt;
+            this.remainingUses = remainingUses;
+        }
+    }
+
+    /**
+     * The latest voice channel invite, or null if there is none yet
+     */
+    private CachedInvite invite;
+
+    /**
+     * The invite request in flight, or null if there is none
+     */
+    private CompletableFuture<Invite> inviteRefresh;
+
+    /**
+     * Completes once the latest invite request has been cached or has
+     * failed, or null if no invite was requested since the room was recycled
+     */
+    private CompletableFuture<?> inviteCached;
+
+    /**
+     * Replaces the cached invite shortly before it expires while the room is
+     * open, or null if nothing is scheduled
+     */
+    private TimingWheel.Timeout inviteRenewal;
+
+    /**
+     * When this room was last opened or used, in epoch milliseconds. Messages
+     * and members joining or leaving the voice channel count as use.
+     */
+    private volatile long lastActivityAt;
+
+    /**
+     * Members in the voice channel, kept up to date from voice events. A room
+     * is never idle while someone is connected.
+     */
+    private final AtomicInteger voiceMembers = new AtomicInteger();
+
+    /**
+     * When this room was warned that it is about to be closed for being idle,
+     * in epoch milliseconds, or 0 if it was not warned since it was last used
+     */
+    private volatile long idleWarnedAt;
 
     /**
-     * Create a new room. Existing channels for this room number (e.g. from
-     * before a bot restart) will be deleted automatically.
+     * Wraps a pair of already created channels.
      *
-     * @param topic The Topic for this room
-     * @param number This room's number
-     * @param mentee The mentee using this room
+     * @param name This room's name
+     * @param number This room's number within its topic, or 0 if it has none
+     * @param topic The Topic this room belongs to
+     * @param textChannel This room's text channel
+     * @param voiceChannel This room's voice channel
      */
-    public Room(Topic topic, QueueMember mentee) {
-        this.category = topic.getCategory();
-        this.name = String.format("%s-%d", topic.getName(), nextRoomNumber);
-        nextRoomNumber++;
+    private Room(String name, int number, Topic topic, TextChannel textChannel, VoiceChannel voiceChannel) {
+        this.name = name;
+        this.number = number;
+        this.topic = topic;
+        this.textChannel = textChannel;
+        this.voiceChannel = voiceChannel;
+    }
 
-        deleteExisting();
+    /**
+     * Wrap the channels of a room that existed before a bot restart. Its
+     * number is reserved so that new rooms do not reuse it.
+     *
+     * @param name The room's name
+     * @param topic The Topic the room belongs to
+     * @param textChannel The room's text channel
+     * @param voiceChannel The room's voice channel
+     *
+     * @return The recovered Room
+     */
+    static Room restore(String name, Topic topic, TextChannel textChannel, VoiceChannel voiceChannel) {
+        int number;
+        try {
+            number = Integer.parseInt(name.substring(name.lastIndexOf('-') + 1));
+        } catch (NumberFormatException ex) {
+            // not a numbered room, so it cannot collide with new rooms
+            number = 0;
+        }
 
-        textChannel = category.createTextChannel(name).complete();
-        Guild guild = textChannel.getGuild();
+        // larger numbers were not handed out by us
+        if (number < 0 || number > MAX_RESTORED_NUMBER) number = 0;
+        topic.reserveRoomNumber(number);
+        return new Room(name, number, topic, textChannel, voiceChannel);
+    }
+
+    /**
+     * Create a new, locked room without blocking the calling thread. The room
+     * takes the lowest room number that is free in its topic.
+     *
+     * Permission overrides are sent along with the channel creation requests,
+     * so the channels are only ever visible to the bot and admins. The text
+     * and voice channels are created in parallel. If either channel fails to
+     * be created, the other one is deleted again.
+     *
+     * @param topic The Topic for this room
+     *
+     * @return A future that completes with the new Room
+     */
+    static CompletableFuture<Room> provision(Topic topic) {
+        Category category = topic.getCategory();
+        int number = topic.allocateRoomNumber();
+        String name = String.format("%s-%d", topic.getName(), number);
+
+        Guild guild = category.getGuild();
 
         ArrayList<IPermissionHolder> allowList = new ArrayList<IPermissionHolder>();
-        allowList.add(guild.getMember(guild.getJDA().getSelfUser()));  // allow the bot itself
-        allowList.add(topic.getRole());  // allow this topics' mentors
-        allowList.add(mentee.getMember());  // allow the mentee
+        allowList.add(guild.getSelfMember());  // allow the bot itself
 
         // allow all admin roles
         for (String adminRoleName : Config.ADMIN_ROLES) {
@@ -59,71 +194,321 @@ public class Room {
             }
         }
 
-        setChannelPermissions(textChannel, guild.getPublicRole(), allowList);
+        CompletableFuture<TextChannel> textFuture = Metrics.track(RestCall.CHANNEL_CREATE,
+            withChannelPermissions(category.createTextChannel(name), guild.getPublicRole(), allowList).submit());
+        CompletableFuture<VoiceChannel> voiceFuture = Metrics.track(RestCall.CHANNEL_CREATE,
+            withChannelPermissions(category.createVoiceChannel(name), guild.getPublicRole(), allowList).submit());
 
-        voiceChannel = category.createVoiceChannel(name).complete();
-        setChannelPermissions(voiceChannel, guild.getPublicRole(), allowList);
+        return textFuture
+            .thenCombine(voiceFuture, (textChannel, voiceChannel) -> new Room(name, number, topic, textChannel, voiceChannel))
+            .whenComplete((room, error) -> {
+                if (error != null) {
+                    topic.releaseRoomNumber(number);
 
-        // send session prompt
-        BotResponses.topicChannelPrompt(textChannel, mentee.getMember(), mentee.getMessage());
+                    // do not leave half of a room behind
+                    textFuture.thenAccept(tc -> tc.delete().queue());
+                    voiceFuture.thenAccept(vc -> vc.delete().queue());
+                }
+            });
     }
 
     /**
-     * Deny view permissions to `everyoneRole` and allow view permissions to
-     * all roles/members in `allowList`.
+     * Attach overrides to a channel creation request which deny view
+     * permissions to `everyoneRole` and allow view permissions to all
+     * roles/members in `allowList`.
      *
-     * @param channel The channel to apply permission overrides to
+     * @param action The channel creation request to add overrides to
      * @param everyoneRole Reference to `@everyone` role
      * @param allowList List of roles/members that should have access to this
      *     channel. The bot's user MUST be in this list.
+     *
+     * @return The same channel creation request
      */
-    private void setChannelPermissions(GuildChannel channel, IPermissionHolder everyoneRole, Collection<IPermissionHolder> allowList) {
+    private static <T extends GuildChannel> ChannelAction<T> withChannelPermissions(ChannelAction<T> action, IPermissionHolder everyoneRole, Collection<IPermissionHolder> allowList) {
+        EnumSet<Permission> view = EnumSet.of(Permission.VIEW_CHANNEL);
         for (IPermissionHolder holder : allowList) {
-            channel.putPermissionOverride(holder)
-                .setAllow(Permission.VIEW_CHANNEL)
-                .complete();
+            action.addPermissionOverride(holder, view, null);
         }
 
-        channel.putPermissionOverride(everyoneRole)
-            .setDeny(Permission.VIEW_CHANNEL)
-            .complete();
+        return action.addPermissionOverride(everyoneRole, null, view);
     }
 
     /**
-     * Delete this room's channels from the server. This object should be disposed
-     * of after calling this method.
+     * Open this room to its topic's mentors and a mentee. Each channel takes
+     * a single permission override edit. The session prompt is sent to the
+     * text channel once both channels are open. The voice channel invite is
+     * requested alongside, and the room is not reported open until it is
+     * cached or INVITE_WAIT_MILLIS have passed.
+     *
+     * @param mentee The mentee using this room
+     * @param prompt The mentee's queue message
+     *
+     * @return A future that completes with this Room
      */
-    public void delete() {
-        textChannel.delete().complete();
-        voiceChannel.delete().complete();
+    CompletableFuture<Room> open(Member mentee, String prompt) {
+        EnumSet<Permission> view = EnumSet.of(Permission.VIEW_CHANNEL);
+
+        // have an invite ready by the time the mentor is told the room is open
+        prefetchVoiceChannelInvite();
+        CompletableFuture<Void> inviteReady;
+        synchronized (this) {
+            inviteReady = inviteCached == null
+                ? CompletableFuture.completedFuture(null)
+                : inviteCached.<Void>handle((result, error) -> null)
+                    .completeOnTimeout(null, INVITE_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        return CompletableFuture.allOf(inviteReady,
+                Metrics.track(RestCall.PERMISSION_OVERRIDE, textChannel.getManager()
+                    .putPermissionOverride(topic.getRole(), view, null)  // allow this topics' mentors
+                    .putPermissionOverride(mentee, view, null)  // allow the mentee
+                    .submit()),
+                Metrics.track(RestCall.PERMISSION_OVERRIDE, voiceChannel.getManager()
+                    .putPermissionOverride(topic.getRole(), view, null)
+                    .putPermissionOverride(mentee, view, null)
+                    .submit()))
+            .thenApply(v -> {
+                // send session prompt
+                BotResponses.topicChannelPrompt(textChannel, mentee, prompt);
+                return this;
+            });
     }
 
     /**
-     * Delete any existing channels using this name/number
+     * Start tracking this room's activity once it is open for a session,
+     * counting whoever is already in the voice channel.
+     *
+     * @param now The current time in epoch milliseconds
      */
-    public void deleteExisting() {
-        Optional<TextChannel> optionalTextChannel = category.getTextChannels().stream()
-            .filter(tc -> tc.getName().equals(name.toLowerCase()))  // text channels are lowercase
-            .findFirst();
-        optionalTextChannel.ifPresent(tc -> tc.delete().complete());
+    void opened(long now) {
+        voiceMembers.set(voiceChannel.getMembers().size());
+        lastActivityAt = now;
+        idleWarnedAt = 0;
+    }
 
-        Optional<VoiceChannel> optionalVoiceChannel = category.getVoiceChannels().stream()
-            .filter(vc -> vc.getName().equals(name))
-            .findFirst();
-        optionalVoiceChannel.ifPresent(vc -> vc.delete().complete());
+    /**
+     * Record that this room is in use, e.g. because a message was sent in it.
+     * Any pending idle warning is withdrawn.
+     */
+    public void recordActivity() {
+        lastActivityAt = System.currentTimeMillis();
+        idleWarnedAt = 0;
     }
 
     /**
-     * Create an invite to this room's voice channel. This invite can be used
-     * twice and expires after 5 minutes.
+     * Record that a member connected to this room's voice channel.
+     */
+    public void voiceJoined() {
+        voiceMembers.incrementAndGet();
+        recordActivity();
+    }
+
+    /**
+     * Record that a member disconnected from this room's voice channel. The
+     * room's idle time starts over once the last member leaves.
+     */
+    public void voiceLeft() {
+        // events from before the room was opened must not make the count negative
+        voiceMembers.updateAndGet(count -> Math.max(0, count - 1));
+        recordActivity();
+    }
+
+    /**
+     * Get how long this room has not been used.
+     *
+     * @param now The current time in epoch milliseconds
+     *
+     * @return The idle time in milliseconds, or 0 while someone is in the
+     *     voice channel
+     */
+    long getIdleMillis(long now) {
+        return voiceMembers.get() > 0 ? 0 : Math.max(0, now - lastActivityAt);
+    }
+
+    /**
+     * Get when this room was warned that it is about to be closed.
+     *
+     * @return The time in epoch milliseconds, or 0 if there is no pending
+     *     warning
+     */
+    long getIdleWarnedAt() {
+        return idleWarnedAt;
+    }
+
+    /**
+     * Record that this room was warned that it is about to be closed.
+     *
+     * @param now The current time in epoch milliseconds
+     */
+    void idleWarned(long now) {
+        idleWarnedAt = now;
+    }
+
+    /**
+     * Get this room ready for another session. Everyone is disconnected from
+     * the voice channel, the mentors and mentee lose access, the text
+     * channel's messages are deleted, and the cached invite is dropped.
+     *
+     * Text channels with more than PURGE_LIMIT messages are not purged, since
+     * that would take longer than creating a new channel.
+     *
+     * Disconnecting members needs the Move Members permission and purging
+     * needs Manage Messages. Without them, JDA throws from this method before
+     * anything is sent.
      *
-     * @return A new Invite for this room's voice channel
+     * @return A future that completes with true if the room was recycled, or
+     *     false if it should be deleted instead
      */
-    public Invite getVoiceChannelInvite() {
+    CompletableFuture<Boolean> recycle() {
+        // invites from this session must not be handed out in the next one
+        synchronized (this) {
+            invite = null;
+            inviteRefresh = null;
+            inviteCached = null;
+            cancelInviteRenewal();
+        }
+
+        Guild guild = textChannel.getGuild();
+        for (Member member : voiceChannel.getMembers()) {
+            guild.kickVoiceMember(member).queue();
+        }
+
+        return CompletableFuture.allOf(lock(textChannel), lock(voiceChannel))
+            .thenCompose(v -> textChannel.getHistory().retrievePast(PURGE_LIMIT).submit())
+            .thenCompose(messages -> {
+                if (messages.size() >= PURGE_LIMIT) return CompletableFuture.completedFuture(false);
+
+                return CompletableFuture.allOf(textChannel.purgeMessages(messages).toArray(new CompletableFuture[0]))
+                    .thenApply(v -> true);
+            });
+    }
+
+    /**
+     * Remove every permission override from a channel except the ones it was
+     * provisioned with.
+     *
+     * @param channel The channel to lock
+     *
+     * @return A future that completes once the overrides are removed
+     */
+    private static CompletableFuture<Void> lock(GuildChannel channel) {
+        Guild guild = channel.getGuild();
+        ChannelManager manager = channel.getManager();
+        ArrayList<CompletableFuture<Void>> deletions = new ArrayList<>();
+        boolean changed = false;
+
+        for (PermissionOverride override : channel.getPermissionOverrides()) {
+            long holderId = override.getIdLong();
+            if (holderId == guild.getIdLong() || holderId == guild.getSelfMember().getIdLong()) continue;
+            if (override.isRoleOverride() && Config.ADMIN_ROLES.contains(override.getRole().getName())) continue;
+
+            if (override.getPermissionHolder() != null) {
+                manager.removePermissionOverride(override.getPermissionHolder());
+                changed = true;
+            } else {
+                // members that are not cached cannot be passed to the manager
+                deletions.add(Metrics.track(RestCall.PERMISSION_OVERRIDE, override.delete().submit()));
+            }
+        }
+
+        if (changed) deletions.add(Metrics.track(RestCall.PERMISSION_OVERRIDE, manager.submit()));
+        return CompletableFuture.allOf(deletions.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * Delete this room's channels from the server. This object should be disposed
+     * of after calling this method. The room's number is freed for reuse once
+     * the channels are gone.
+     *
+     * @return A future that completes once both channels are deleted
+     */
+    public CompletableFuture<Void> delete() {
+        synchronized (this) {
+            cancelInviteRenewal();
+        }
+
+        return CompletableFuture.allOf(
+                textChannel.delete().submit(),
+                voiceChannel.delete().submit())
+            .whenComplete((v, error) -> topic.releaseRoomNumber(number));
+    }
+
+    /**
+     * Take a use of this room's cached voice channel invite without waiting.
+     * A new invite is requested in the background once the cached one is
+     * used up, expired, or about to be.
+     *
+     * @return The cached Invite, or null if there is no valid invite yet
+     */
+    public synchronized Invite takeVoiceChannelInvite() {
+        Invite result = null;
+        if (invite != null && invite.remainingUses > 0 && invite.expiresAt - System.nanoTime() > 0) {
+            invite.remainingUses--;
+            result = invite.invite;
+        }
+
+        prefetchVoiceChannelInvite();
+        return result;
+    }
+
+    /**
+     * Request a new voice channel invite in the background if the cached one
+     * is used up, expired, or about to be.
+     */
+    synchronized void prefetchVoiceChannelInvite() {
+        if (invite == null || invite.remainingUses <= 0 || invite.expiresAt - System.nanoTime() < INVITE_REFRESH_NANOS) {
+            refreshVoiceChannelInvite();
+        }
+    }
+
+    /**
+     * Request a new invite to this room's voice channel and cache it. This
+     * invite can be used five times and expires after 5 minutes. Only one
+     * invite is requested at a time. Once it is cached, a replacement is
+     * scheduled for INVITE_REFRESH_NANOS before it expires, so the ready
+     * message never has to wait for one.
+     */
+    private synchronized void refreshVoiceChannelInvite() {
+        if (inviteRefresh != null) return;
+
         InviteAction action = voiceChannel.createInvite();
-        action.setMaxAge(5 * 60);  // 5 minutes, to prevent hitting the invite cap
-        action.setMaxUses(5);
-        return action.complete();
+        action.setMaxAge(INVITE_MAX_AGE_SECONDS);  // 5 minutes, to prevent hitting the invite cap
+        action.setMaxUses(INVITE_MAX_USES);
+
+        // measure the age from before the request so the cached expiry is never too late
+        long requestedAt = System.nanoTime();
+        CompletableFuture<Invite> future = Metrics.track(RestCall.INVITE, action.submit());
+        inviteRefresh = future;
+        inviteCached = future.whenComplete((created, error) -> {
+            synchronized (this) {
+                // the room was recycled while this invite was requested
+                if (inviteRefresh != future) return;
+
+                inviteRefresh = null;
+                if (error != null) {
+                    error.printStackTrace();
+                } else {
+                    invite = new CachedInvite(created,
+                        requestedAt + TimeUnit.SECONDS.toNanos(INVITE_MAX_AGE_SECONDS), INVITE_MAX_USES);
+
+                    // the queue expiry wheel's one-second ticks are plenty for a five-minute invite
+                    cancelInviteRenewal();
+                    long renewInMillis = TimeUnit.NANOSECONDS.toMillis(
+                        invite.expiresAt - INVITE_REFRESH_NANOS - System.nanoTime());
+                    inviteRenewal = TimingWheel.QUEUE_EXPIRY.schedule(renewInMillis, this::prefetchVoiceChannelInvite);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stop replacing the cached invite, e.g. because the room is closed.
+     */
+    private synchronized void cancelInviteRenewal() {
+        if (inviteRenewal != null) {
+            inviteRenewal.cancel();
+            inviteRenewal = null;
+        }
     }
 
     /**
@@ -152,4 +537,13 @@ public class Room {
     public String getName() {
         return name;
     }
+
+    /**
+     * Get the Topic this room belongs to
+     *
+     * @return This room's Topic
+     */
+    public Topic getTopic() {
+        return topic;
+    }
 }
@@ -0,0 +1,185 @@
+package entities;
+
+import info.Config;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a few hidden rooms ready for a topic, so that a mentor's $ready only
+ * has to open an existing pair of channels instead of creating new ones.
+ *
+ * Idle rooms are only visible to the bot and admins. Finished rooms are
+ * purged and locked again, then put back into the pool. The pool refills
+ * itself in the background, and its size follows a moving average of how
+ * often rooms are taken.
+ */
+class RoomPool {
+    /**
+     * Time constant of the moving average of room requests
+     */
+    private static final long RATE_WINDOW_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    private final Topic topic;
+    private final ConcurrentLinkedDeque<Room> idle = new ConcurrentLinkedDeque<>();
+
+    /**
+     * Number of rooms currently being created or recycled for the pool
+     */
+    private int pending;
+    private boolean closed;
+
+    /**
+     * Exponentially decayed count of recent room requests
+     */
+    private double recentRequests;
+    private long lastDecayNanos = System.nanoTime();
+
+    /**
+     * Constructs an empty pool. Call refill() to start creating rooms.
+     *
+     * @param topic The Topic this pool creates rooms for
+     */
+    RoomPool(Topic topic) {
+        this.topic = topic;
+    }
+
+    /**
+     * Take a room out of the pool, or create one if the pool is empty. The
+     * room is still locked; open it for a mentee with Room.open().
+     *
+     * @return A future that completes with a locked Room
+     */
+    CompletableFuture<Room> acquire() {
+        synchronized (this) {
+            decay(System.nanoTime());
+            recentRequests++;
+        }
+
+        Room room = idle.poll();
+        refill();
+        return room != null ? CompletableFuture.completedFuture(room) : Room.provision(topic);
+    }
+
+    /**
+     * Return a room to the pool once its session is over. The room is purged
+     * and locked first. Rooms that cannot be recycled, or that the pool has
+     * no use for, are deleted instead. Recycling needs the Move Members and
+     * Manage Messages permissions; without them, rooms are deleted.
+     *
+     * @param room The Room to return
+     *
+     * @return A future that completes once the room is back in the pool or
+     *     deleted
+     */
+    CompletableFuture<Void> release(Room room) {
+        synchronized (this) {
+            if (!wantsMore() || !topic.getServer().canKeepIdleRoom()) return room.delete();
+            pending++;
+        }
+
+        CompletableFuture<Boolean> recycling;
+        try {
+            recycling = room.recycle();
+        } catch (RuntimeException ex) {
+            // JDA throws before sending anything if the bot lacks a permission, e.g. to disconnect members
+            recycling = CompletableFuture.failedFuture(ex);
+        }
+
+        return recycling
+            .exceptionally(error -> {
+                error.printStackTrace();
+                return false;
+            })
+            .thenCompose(recycled -> {
+                synchronized (this) {
+                    pending--;
+                }
+                return recycled ? keep(room) : room.delete();
+            });
+    }
+
+    /**
+     * Start creating rooms until the pool reaches its target size, or until
+     * the mentoring category has no channels to spare for idle rooms.
+     * Creation happens in the background and does not block the calling
+     * thread.
+     */
+    synchronized void refill() {
+        Server server = topic.getServer();
+        while (wantsMore() && server.reserveIdleRoom()) {
+            pending++;
+            Room.provision(topic).whenComplete((room, error) -> {
+                server.idleRoomProvisioned();
+                synchronized (this) {
+                    pending--;
+                }
+
+                if (error != null) {
+                    // do not retry right away, the next request will refill again
+                    error.printStackTrace();
+                } else {
+                    keep(room);
+                }
+            });
+        }
+    }
+
+    /**
+     * Delete every idle room and stop refilling, e.g. because the topic was
+     * deleted.
+     */
+    void close() {
+        synchronized (this) {
+            closed = true;
+        }
+
+        Room room;
+        while ((room = idle.poll()) != null) {
+            room.delete();
+        }
+    }
+
+    /**
+     * Add a locked room to the idle rooms, unless the pool was closed.
+     *
+     * @param room The Room to keep
+     *
+     * @return A future that completes once the room is kept or deleted
+     */
+    private synchronized CompletableFuture<Void> keep(Room room) {
+        if (closed) return room.delete();
+
+        idle.add(room);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Check if the pool is below its target size, counting rooms that are
+     * still being created or recycled.
+     *
+     * @return True if another room should be added to the pool
+     */
+    private synchronized boolean wantsMore() {
+        return !closed && idle.size() + pending < targetSize();
+    }
+
+    /**
+     * Size the pool to cover the expected requests over the next
+     * ROOM_POOL_LEAD_SECONDS, based on the recent request rate.
+     *
+     * @return The number of idle rooms to keep
+     */
+    private synchronized int targetSize() {
+        decay(System.nanoTime());
+        double perSecond = recentRequests / (RATE_WINDOW_NANOS / 1e9);
+        int target = (int) Math.ceil(perSecond * Config.ROOM_POOL_LEAD_SECONDS);
+        return Math.max(Config.ROOM_POOL_MIN, Math.min(Config.ROOM_POOL_MAX, target));
+    }
+
+    private void decay(long now) {
+        recentRequests *= Math.exp(-(double) (now - lastDecayNanos) / RATE_WINDOW_NANOS);
+        lastDecayNanos = now;
+    }
+}
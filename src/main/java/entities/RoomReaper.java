@@ -0,0 +1,104 @@
+package entities;
+
+import info.BotResponses;
+import metrics.Metrics;
+
+import java.util.Collection;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Closes open rooms that nobody uses, e.g. because the mentor forgot to run
+ * $finish. Rooms keep track of their own activity from message and voice
+ * events, so a single thread only has to look at every open room's
+ * timestamps every few seconds instead of keeping a timer per room.
+ *
+ * A room is warned once it has been idle for all but the warning period,
+ * and closed if it is still idle when the warning period is over. Closed
+ * rooms are recycled into their topic's pool like finished ones.
+ */
+public class RoomReaper {
+    /**
+     * How often open rooms are checked
+     */
+    private static final long SWEEP_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final Supplier<Collection<Server>> servers;
+    private final long idleMillis;
+    private final long warningMillis;
+
+    /**
+     * Constructs a RoomReaper. Nothing is checked until it is started.
+     *
+     * @param servers Supplies the Servers whose rooms are checked
+     * @param idleMillis How long a room may be idle before it is closed
+     * @param warningMillis How long before a room is closed it is warned
+     */
+    public RoomReaper(Supplier<Collection<Server>> servers, long idleMillis, long warningMillis) {
+        this.servers = servers;
+        this.idleMillis = idleMillis;
+        this.warningMillis = Math.min(warningMillis, idleMillis);
+    }
+
+    /**
+     * Start checking rooms on a background thread.
+     */
+    public void start() {
+        ScheduledExecutorService thread = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread reaperThread = new Thread(runnable, "mentorbot-room-reaper");
+            reaperThread.setDaemon(true);
+            return reaperThread;
+        });
+        thread.scheduleWithFixedDelay(this::sweep, SWEEP_MILLIS, SWEEP_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Warn or close every idle room. A failure in one guild must not stop the
+     * thread, since a scheduled task that throws is never run again.
+     */
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        for (Server server : servers.get()) {
+            try {
+                for (Topic topic : server.getTopics()) {
+                    for (Room room : topic.getRooms()) {
+                        check(topic, room, now);
+                    }
+                }
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Warn a room that is about to be closed, or close it if it stayed idle
+     * for the whole warning period.
+     *
+     * @param topic The Topic the room belongs to
+     * @param room The Room to check
+     * @param now The current time in epoch milliseconds
+     */
+    private void check(Topic topic, Room room, long now) {
+        long idle = room.getIdleMillis(now);
+        if (idle < idleMillis - warningMillis) return;
+
+        long warnedAt = room.getIdleWarnedAt();
+        if (warnedAt == 0) {
+            // always warn first, even if the thread fell behind, so nobody loses a room without notice
+            room.idleWarned(now);
+            BotResponses.roomIdleWarning(room.getTextChannel(), TimeUnit.MILLISECONDS.toMinutes(idle),
+                TimeUnit.MILLISECONDS.toMinutes(warningMillis));
+        } else if (now - warnedAt >= warningMillis) {
+            // a mentor may have run $finish since the sweep started
+            topic.closeRoom(room).ifPresent(closing -> {
+                Metrics.idleRoomClosed();
+                closing.whenComplete((v, error) -> {
+                    if (error != null) error.printStackTrace();
+                });
+            });
+        }
+    }
+}
@@ -1,10 +1,23 @@
 package entities;
 
+import info.Config;
+import metrics.Metrics;
 import net.dv8tion.jda.api.entities.Category;
 import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.Role;
+import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.entities.VoiceChannel;
+import persistence.QueueJournal;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
 /**
  * An object that provides methods to store Topic information into
@@ -12,21 +25,66 @@ import java.util.*;
  */
 public class Server {
     public static final String MENTORING_CATEGORY_NAME = "Mentoring";
+
+    /**
+     * Most channels Discord allows in one category
+     */
+    static final int CATEGORY_CHANNEL_LIMIT = 50;
+
+    /**
+     * Channels in the mentoring category that idle rooms may not take, so a
+     * topic whose pool is empty can still create a room on demand
+     */
+    private static final int ON_DEMAND_CHANNELS = 10;
+
     private final Guild guild;
     private final Category mentoringCategory;
+    private final QueueJournal journal;
+    private final PermissionIndex permissions = new PermissionIndex();
+
+    /**
+     * The fronts of every topic's queue, for $ready without a topic
+     */
+    private final QueueHeads heads = new QueueHeads();
+
+    /**
+     * Map from lowercase topic names to Topic objects. Role creation callbacks
+     * write to this map from JDA's callback threads, so it must be concurrent.
+     */
+    private final ConcurrentHashMap<String, Topic> topics = new ConcurrentHashMap<>();
+
+    /**
+     * Map from the IDs of every room's text and voice channels to the Room
+     */
+    private final ConcurrentHashMap<Long, Room> roomsByChannel = new ConcurrentHashMap<>();
+
+    /**
+     * Map from the IDs of queued members who went offline to the timeouts
+     * that drop them from their queues
+     */
+    private final ConcurrentHashMap<Long, TimingWheel.Timeout> offlineTimeouts = new ConcurrentHashMap<>();
+
+    /**
+     * Channels being created for idle rooms that may not be in the mentoring
+     * category yet. Every topic's pool shares the category, so this is
+     * counted per guild.
+     */
+    private int pendingIdleChannels;
 
     /**
-     * Map from topic names to Topic objects
+     * Incremented whenever a topic is created or deleted
      */
-    private final HashMap<String, Topic> topics = new HashMap<>();
+    private final AtomicInteger topicVersion = new AtomicInteger();
 
     /**
-     * Constructs a Server object from a Guild's role list.
+     * Constructs a Server object from a Guild's role list. Queues and rooms
+     * recorded in the journal before a restart are restored.
      *
      * @param guild The Guild that this object is associated with
      */
     public Server(Guild guild) {
         this.guild = guild;
+        this.journal = openJournal(guild);
 
         // setup mentoring channel category
         Optional<Category> optionalCategory = guild.getCategoriesByName(MENTORING_CATEGORY_NAME, false)
@@ -39,14 +97,113 @@ public class Server {
         for (Role role : roles) {
             String name = role.getName();
             if (name.startsWith(Topic.PREFIX)) {
-                topics.put(
-                    name.toLowerCase().substring(Topic.PREFIX.length()),
-                    new Topic(name.substring(Topic.PREFIX.length()), role, mentoringCategory)
-                );
+                Topic topic = new Topic(name.substring(Topic.PREFIX.length()), role, this);
+                topics.put(name.toLowerCase().substring(Topic.PREFIX.length()), topic);
+                restore(topic);
+                topic.getRoomPool().refill();
+            }
+        }
+
+        // drop state for topics whose roles were deleted while the bot was down
+        for (String topicName : journal.getTopicNames()) {
+            if (!topics.containsKey(topicName)) {
+                journal.topicDeleted(topicName);
             }
         }
     }
 
+    /**
+     * Open this guild's queue journal, falling back to an in-memory journal if
+     * it cannot be read.
+     *
+     * @param guild The Guild to open the journal for
+     *
+     * @return The guild's journal
+     */
+    private static QueueJournal openJournal(Guild guild) {
+        if (Config.JOURNAL_DIR.isEmpty()) return QueueJournal.inMemory(guild.getIdLong());
+
+        try {
+            return QueueJournal.open(Path.of(Config.JOURNAL_DIR), guild.getIdLong());
+        } catch (IOException ex) {
+            ex.printStackTrace();
+            return QueueJournal.inMemory(guild.getIdLong());
+        }
+    }
+
+    /**
+     * Restore a topic's queue and rooms from the journal. Rooms whose
+     * channels are gone are dropped, and any other room channels left in the
+     * mentoring category are returned to the topic's pool.
+     *
+     * @param topic The Topic to restore
+     */
+    private void restore(Topic topic) {
+        for (QueueJournal.QueuedEntry entry : journal.getQueue(topic.getName())) {
+            topic.restoreToQueue(new QueueMember(entry.getMemberId(), entry.getMessage(), entry.getEnqueuedAt()));
+        }
+
+        for (QueueJournal.RoomEntry entry : journal.getRooms(topic.getName())) {
+            TextChannel textChannel = guild.getTextChannelById(entry.getTextChannelId());
+            VoiceChannel voiceChannel = guild.getVoiceChannelById(entry.getVoiceChannelId());
+            if (textChannel != null && voiceChannel != null) {
+                topic.restoreRoom(Room.restore(entry.getName(), topic, textChannel, voiceChannel));
+            } else {
+                // do not leave half of a room behind
+                if (textChannel != null) textChannel.delete().queue();
+                if (voiceChannel != null) voiceChannel.delete().queue();
+                journal.roomClosed(topic.getName(), entry.getName());
+            }
+        }
+
+        // idle rooms are not journaled, so find them by name
+        String prefix = topic.getName().toLowerCase() + "-";
+        Map<String, VoiceChannel> voiceChannels = new HashMap<>();
+        for (VoiceChannel voiceChannel : mentoringCategory.getVoiceChannels()) {
+            if (isRoomChannel(voiceChannel.getName().toLowerCase(), prefix)) {
+                voiceChannels.put(voiceChannel.getName().toLowerCase(), voiceChannel);
+            }
+        }
+
+        for (TextChannel textChannel : mentoringCategory.getTextChannels()) {
+            if (!isRoomChannel(textChannel.getName(), prefix)) continue;
+
+            VoiceChannel voiceChannel = voiceChannels.remove(textChannel.getName());
+            if (roomsByChannel.containsKey(textChannel.getIdLong())) continue;
+
+            if (voiceChannel != null && !roomsByChannel.containsKey(voiceChannel.getIdLong())) {
+                topic.getRoomPool().release(Room.restore(voiceChannel.getName(), topic, textChannel, voiceChannel));
+            } else {
+                textChannel.delete().queue();
+            }
+        }
+
+        // voice channels without a text channel
+        for (VoiceChannel voiceChannel : voiceChannels.values()) {
+            if (!roomsByChannel.containsKey(voiceChannel.getIdLong())) {
+                voiceChannel.delete().queue();
+            }
+        }
+    }
+
+    /**
+     * Checks if a channel name is a room name for a topic, i.e. the topic's
+     * name followed by a room number.
+     *
+     * @param channelName The lowercase channel name
+     * @param prefix The lowercase topic name followed by a dash
+     *
+     * @return True if the channel belongs to one of the topic's rooms
+     */
+    private static boolean isRoomChannel(String channelName, String prefix) {
+        if (!channelName.startsWith(prefix) || channelName.length() == prefix.length()) return false;
+
+        for (int i = prefix.length(); i < channelName.length(); i++) {
+            if (!Character.isDigit(channelName.charAt(i))) return false;
+        }
+        return true;
+    }
+
     /**
      * Used for comparison between two Server objects. Servers pointing
      * to the same Guild object return the same hash.
@@ -65,7 +222,12 @@ public class Server {
         guild.createRole()
                 .setName(Topic.PREFIX + topicName)
                 .setMentionable(true)
-                .queue(role -> topics.put(topicName, new Topic(topicName, role, mentoringCategory)));
+                .queue(role -> {
+                    Topic topic = new Topic(topicName, role, this);
+                    topics.put(topicName.toLowerCase(), topic);
+                    topicVersion.incrementAndGet();
+                    topic.getRoomPool().refill();
+                });
     }
 
     /**
@@ -76,7 +238,11 @@ public class Server {
     public void deleteTopic(Topic topic) {
         if (topic != null) {
             topic.getRole().delete().queue();
-            topics.remove(topic.getName());
+            topics.remove(topic.getName().toLowerCase(), topic);
+            heads.remove(topic);
+            topicVersion.incrementAndGet();
+            topic.getRoomPool().close();
+            journal.topicDeleted(topic.getName());
         }
     }
 
@@ -89,6 +255,232 @@ public class Server {
         deleteTopic(topics.get(topicName.toLowerCase()));
     }
 
+    /**
+     * Take the mentee who has waited longest across every topic a mentor may
+     * serve. If another mentor empties the chosen queue first, the next
+     * topic in line is tried.
+     *
+     * @param eligible Whether the mentor may take mentees from a topic
+     *
+     * @return The topic and the mentee taken from its queue, or an empty
+     *     Optional if every queue the mentor may serve is empty
+     */
+    public Optional<Map.Entry<Topic, QueueMember>> popLongestWaiting(Predicate<Topic> eligible) {
+        while (true) {
+            Topic topic = heads.first(eligible);
+            if (topic == null) return Optional.empty();
+
+            // a topic deleted while its queue was changing may still be listed
+            if (topics.get(topic.getName().toLowerCase()) != topic) {
+                heads.remove(topic);
+                continue;
+            }
+
+            QueueMember mentee = topic.popFromQueue();
+            if (mentee != null) return Optional.of(Map.entry(topic, mentee));
+        }
+    }
+
+    /**
+     * Drop a member from every queue right away, e.g. after they left the
+     * guild.
+     *
+     * @param memberId The ID of the member to drop
+     * @param reason Why they are dropped, for metrics
+     *
+     * @return The number of queues they were dropped from
+     */
+    public int evictFromQueues(long memberId, Metrics.Eviction reason) {
+        TimingWheel.Timeout offline = offlineTimeouts.remove(memberId);
+        if (offline != null) offline.cancel();
+
+        int evicted = 0;
+        for (Topic topic : topics.values()) {
+            if (topic.evictFromQueue(memberId)) evicted++;
+        }
+        if (evicted > 0) Metrics.evicted(reason);
+        return evicted;
+    }
+
+    /**
+     * Start the grace period for a member who went offline. If they are still
+     * offline once it is over, they are dropped from every queue.
+     *
+     * @param memberId The ID of the member
+     * @param graceMinutes How long they may stay offline
+     */
+    public void memberWentOffline(long memberId, long graceMinutes) {
+        if (!isQueued(memberId)) return;
+
+        TimingWheel.Timeout timeout = TimingWheel.QUEUE_EXPIRY.schedule(TimeUnit.MINUTES.toMillis(graceMinutes),
+            () -> evictFromQueues(memberId, Metrics.Eviction.OFFLINE));
+        TimingWheel.Timeout previous = offlineTimeouts.put(memberId, timeout);
+        if (previous != null) previous.cancel();
+    }
+
+    /**
+     * Keep a member who came back online in their queues.
+     *
+     * @param memberId The ID of the member
+     */
+    public void memberCameOnline(long memberId) {
+        TimingWheel.Timeout timeout = offlineTimeouts.remove(memberId);
+        if (timeout != null) timeout.cancel();
+    }
+
+    /**
+     * Resolves a member of this Server by ID. Cached members are returned
+     * right away; others are fetched from Discord.
+     *
+     * @param memberId The ID of the member to resolve
+     *
+     * @return A future that completes with the Member
+     */
+    public CompletableFuture<Member> retrieveMember(long memberId) {
+        Member member = guild.getMemberById(memberId);
+        if (member != null) return CompletableFuture.completedFuture(member);
+        return guild.retrieveMemberById(memberId).submit();
+    }
+
+    /**
+     * Reserve space in the mentoring category for a new idle room. Idle rooms
+     * only get the channels left after ON_DEMAND_CHANNELS, so pools for many
+     * topics cannot fill the category between them.
+     *
+     * @return True if the room may be created; call idleRoomProvisioned()
+     *     once it is, whether or not that succeeded
+     */
+    synchronized boolean reserveIdleRoom() {
+        if (countMentoringChannels() + pendingIdleChannels + 2 > CATEGORY_CHANNEL_LIMIT - ON_DEMAND_CHANNELS) {
+            return false;
+        }
+        pendingIdleChannels += 2;
+        return true;
+    }
+
+    /**
+     * Release a reservation made with reserveIdleRoom().
+     */
+    synchronized void idleRoomProvisioned() {
+        pendingIdleChannels -= 2;
+    }
+
+    /**
+     * Check if a finished room may go back to its pool instead of being
+     * deleted, i.e. if the mentoring category is not so full that idle rooms
+     * would take channels needed to create rooms on demand.
+     *
+     * @return True if idle rooms may keep their channels
+     */
+    synchronized boolean canKeepIdleRoom() {
+        return countMentoringChannels() + pendingIdleChannels <= CATEGORY_CHANNEL_LIMIT - ON_DEMAND_CHANNELS;
+    }
+
+    private int countMentoringChannels() {
+        return mentoringCategory.getTextChannels().size() + mentoringCategory.getVoiceChannels().size();
+    }
+
+    /**
+     * Index a room under its channels' IDs.
+     *
+     * @param room The Room to index
+     */
+    void registerRoom(Room room) {
+        roomsByChannel.put(room.getTextChannel().getIdLong(), room);
+        roomsByChannel.put(room.getVoiceChannel().getIdLong(), room);
+    }
+
+    /**
+     * Remove a room from the channel index.
+     *
+     * @param room The Room to remove
+     */
+    void unregisterRoom(Room room) {
+        roomsByChannel.remove(room.getTextChannel().getIdLong(), room);
+        roomsByChannel.remove(room.getVoiceChannel().getIdLong(), room);
+    }
+
+    /**
+     * Gets the Room that owns a channel
+     *
+     * @param channelId The ID of a text or voice channel
+     *
+     * @return The Room, or an empty Optional if the channel is not part of a
+     *     room
+     */
+    public Optional<Room> getRoomByChannel(long channelId) {
+        return Optional.ofNullable(roomsByChannel.get(channelId));
+    }
+
+    /**
+     * Checks if a member is waiting in any of this Server's queues.
+     *
+     * @param memberId The ID of the member to check
+     *
+     * @return True if the member is in at least one queue
+     */
+    public boolean isQueued(long memberId) {
+        for (Topic topic : topics.values()) {
+            if (topic.isInQueue(memberId)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the Guild this Server represents
+     *
+     * @return This Server's Guild
+     */
+    public Guild getGuild() {
+        return guild;
+    }
+
+    /**
+     * Gets the category that mentoring rooms are created in
+     *
+     * @return The mentoring Category
+     */
+    public Category getMentoringCategory() {
+        return mentoringCategory;
+    }
+
+    /**
+     * Gets the index of what this Server's roles and members may do
+     *
+     * @return This Server's permission index
+     */
+    public PermissionIndex getPermissions() {
+        return permissions;
+    }
+
+    /**
+     * Gets the fronts of this Server's topic queues
+     *
+     * @return This Server's queue heads
+     */
+    QueueHeads getQueueHeads() {
+        return heads;
+    }
+
+    /**
+     * Gets the journal that records this Server's queues and rooms
+     *
+     * @return This Server's journal
+     */
+    public QueueJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Gets a number that changes whenever a topic is created or deleted, so
+     * that topic listings can tell if they are out of date
+     *
+     * @return The version of this Server's set of topics
+     */
+    public int getTopicVersion() {
+        return topicVersion.get();
+    }
+
     /**
      * Gets all Topics from this Server
      *
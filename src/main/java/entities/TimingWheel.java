@@ -0,0 +1,155 @@
+package entities;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A hashed timing wheel: timeouts are dropped into one of a fixed number of
+ * buckets by their deadline, and a single thread visits one bucket per tick.
+ * Scheduling and cancelling take constant time, and each tick only touches
+ * the timeouts in its bucket, so one thread can keep track of thousands of
+ * queue entries. Deadlines are rounded up to the next tick.
+ *
+ * Timeouts further away than one turn of the wheel count down the turns
+ * they still have to wait. Cancelled timeouts are dropped when their bucket
+ * is next visited.
+ */
+class TimingWheel {
+    /**
+     * The wheel that expires queue entries for every guild
+     */
+    static final TimingWheel QUEUE_EXPIRY = new TimingWheel(TimeUnit.SECONDS.toMillis(1), 512,
+        "mentorbot-queue-expiry");
+
+    /**
+     * A scheduled task that can be cancelled until it runs.
+     */
+    static class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private long rounds;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Keep the task from running, if it has not run yet.
+         */
+        void cancel() {
+            cancelled = true;
+        }
+    }
+
+    private final long tickMillis;
+    private final long startMillis = System.currentTimeMillis();
+
+    /**
+     * Timeouts by tick, modulo the wheel size. Only used by the wheel's thread.
+     */
+    private final ArrayDeque<Timeout>[] buckets;
+
+    /**
+     * Timeouts scheduled since the last tick, handed to the wheel's thread
+     */
+    private final ConcurrentLinkedQueue<Timeout> added = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The next tick to process. Only used by the wheel's thread.
+     */
+    private long tick;
+
+    /**
+     * Constructs a timing wheel and starts its thread.
+     *
+     * @param tickMillis How long one tick lasts
+     * @param size The number of buckets; must be a power of two
+     * @param threadName The name of the wheel's thread
+     */
+    @SuppressWarnings("unchecked")
+    TimingWheel(long tickMillis, int size, String threadName) {
+        if (Integer.bitCount(size) != 1) throw new IllegalArgumentException("The wheel size must be a power of two");
+
+        this.tickMillis = tickMillis;
+        this.buckets = new ArrayDeque[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+
+        ScheduledExecutorService thread = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread wheelThread = new Thread(runnable, threadName);
+            wheelThread.setDaemon(true);
+            return wheelThread;
+        });
+        thread.scheduleAtFixedRate(this::advance, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run a task after a delay, on the wheel's thread. Tasks should be quick,
+     * since they hold up every other timeout.
+     *
+     * @param delayMillis How long to wait
+     * @param task The task to run
+     *
+     * @return A handle to cancel the task with
+     */
+    Timeout schedule(long delayMillis, Runnable task) {
+        Timeout timeout = new Timeout(task, System.currentTimeMillis() - startMillis + Math.max(0, delayMillis));
+        added.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Process every tick that has passed. The executor can fall behind, e.g.
+     * during a long GC pause, so this catches up instead of assuming exactly
+     * one tick went by.
+     */
+    private void advance() {
+        long elapsedTicks = (System.currentTimeMillis() - startMillis) / tickMillis;
+
+        Timeout timeout;
+        while ((timeout = added.poll()) != null) {
+            if (timeout.cancelled) continue;
+
+            long due = Math.max(tick, (timeout.deadline + tickMillis - 1) / tickMillis);
+            timeout.rounds = (due - tick) / buckets.length;
+            buckets[(int) (due & (buckets.length - 1))].add(timeout);
+        }
+
+        while (tick <= elapsedTicks) {
+            expire(buckets[(int) (tick & (buckets.length - 1))]);
+            tick++;
+        }
+    }
+
+    /**
+     * Run the timeouts in a bucket that are due this turn of the wheel.
+     *
+     * @param bucket The bucket for the current tick
+     */
+    private static void expire(ArrayDeque<Timeout> bucket) {
+        Iterator<Timeout> timeouts = bucket.iterator();
+        while (timeouts.hasNext()) {
+            Timeout timeout = timeouts.next();
+            if (timeout.cancelled) {
+                timeouts.remove();
+            } else if (timeout.rounds > 0) {
+                timeout.rounds--;
+            } else {
+                timeouts.remove();
+                try {
+                    timeout.task.run();
+                } catch (RuntimeException ex) {
+                    // one failed task must not stop the wheel
+                    ex.printStackTrace();
+                }
+            }
+        }
+    }
+}
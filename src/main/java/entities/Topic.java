@@ -1,28 +1,55 @@
 package entities;
 
+import info.Config;
+import metrics.Metrics;
 import net.dv8tion.jda.api.entities.Category;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.Role;
+import persistence.QueueJournal;
 
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A topic for a server. Internally contains a queue of Members.
+ *
+ * Each topic guards its queue with its own lock, so every queue operation is
+ * atomic and commands for different topics never contend with each other.
  */
 public class Topic {
     public static final String PREFIX = "Topic | ";
 
     private final String name;
     private final Role role;
+    private final Server server;
     private final Category category;
-    private final LinkedList<QueueMember> queue = new LinkedList<>();
+    private final QueueJournal journal;
+    private final QueueHeads heads;
+    private final MemberQueue queue = new MemberQueue();
+    private final RoomPool pool = new RoomPool(this);
+    private final WaitEstimator waits = new WaitEstimator();
+
+    /**
+     * Room numbers in use by this topic's rooms. Bit 0 is never set.
+     */
+    private final BitSet roomNumbers = new BitSet();
 
     /**
      * Map from room names to Room objects
      */
-    private final HashMap<String, Room> rooms = new HashMap<>();
+    private final ConcurrentHashMap<String, Room> rooms = new ConcurrentHashMap<>();
+
+    /**
+     * Map from room names to when their current session started, in epoch
+     * milliseconds. Rooms restored after a restart have no entry.
+     */
+    private final ConcurrentHashMap<String, Long> sessionStarts = new ConcurrentHashMap<>();
 
     /**
      * Constructs a new Topic object. This does not automatically create
@@ -30,39 +57,217 @@ public class Topic {
      *
      * @param name The name of the topic.
      * @param role The Role that represents this in the guild
-     * @param category The Category that this topic's channels should be
-     *                 added to
+     * @param server The Server this topic belongs to. Its mentoring category
+     *               holds this topic's channels, and its journal records this
+     *               topic's queue and rooms.
      */
-    public Topic(String name, Role role, Category category) {
+    public Topic(String name, Role role, Server server) {
         this.name = name;
         this.role = role;
-        this.category = category;
+        this.server = server;
+        this.category = server.getMentoringCategory();
+        this.journal = server.getJournal();
+        this.heads = server.getQueueHeads();
     }
 
     /**
-     * Add a Member to the back of the queue.
+     * Add a Member to the back of the queue, unless they are already in it.
      *
      * @param member The Member to add
+     *
+     * @return True if the member was added, false if they were already queued
      */
-    public void addToQueue(QueueMember member) {
-        queue.add(member);
+    public boolean addToQueue(QueueMember member) {
+        synchronized (queue) {
+            if (!queue.addLast(member)) return false;
+            journal.queueJoined(name, member.getMemberId(), member.getMessage(), member.getEnqueuedAt());
+            queueChanged();
+        }
+        scheduleExpiry(member);
+        return true;
+    }
+
+    /**
+     * Put a QueueMember back at the front of the queue, e.g. after their
+     * room could not be created.
+     *
+     * @param member The QueueMember to return
+     */
+    public void returnToQueue(QueueMember member) {
+        synchronized (queue) {
+            if (!queue.addFirst(member)) return;
+            journal.queueReturned(name, member.getMemberId(), member.getMessage(), member.getEnqueuedAt());
+            queueChanged();
+        }
+        scheduleExpiry(member);
+    }
+
+    /**
+     * Add a recovered QueueMember to the back of the queue without recording
+     * it in the journal again.
+     *
+     * @param member The QueueMember to restore
+     */
+    void restoreToQueue(QueueMember member) {
+        synchronized (queue) {
+            if (!queue.addLast(member)) return;
+            queueChanged();
+        }
+        scheduleExpiry(member);
     }
 
     /**
      * Remove a Member from their position in the queue.
      *
      * @param member The Member to remove
+     *
+     * @return True if the member was removed, false if they were not queued
+     */
+    public boolean removeFromQueue(Member member) {
+        synchronized (queue) {
+            if (queue.remove(member.getIdLong()) == null) return false;
+            journal.queueLeft(name, member.getIdLong());
+            queueChanged();
+            return true;
+        }
+    }
+
+    /**
+     * Remove a Member from their position in the queue on a mentor's behalf.
+     *
+     * @param member The Member to kick
+     *
+     * @return True if the member was removed, false if they were not queued
      */
-    public void removeFromQueue(Member member) {
-        queue.remove(new QueueMember(member));
+    public boolean kickFromQueue(Member member) {
+        synchronized (queue) {
+            if (queue.remove(member.getIdLong()) == null) return false;
+            journal.queueKicked(name, member.getIdLong());
+            queueChanged();
+            return true;
+        }
     }
 
     /**
-     * Remove a QueueMember from their position in the queue.
-     * @param member The QueueMember to remove
+     * Remove several Members from the queue on a mentor's behalf, all at once.
+     *
+     * @param members The Members to kick
+     *
+     * @return The Members who were removed; the others were not queued
      */
-    public void removeFromQueue(QueueMember member) {
-        queue.remove(member);
+    public List<Member> kickFromQueue(List<Member> members) {
+        List<Member> kicked = new ArrayList<>(members.size());
+        synchronized (queue) {
+            for (Member member : members) {
+                if (queue.remove(member.getIdLong()) == null) continue;
+                journal.queueKicked(name, member.getIdLong());
+                kicked.add(member);
+            }
+            if (!kicked.isEmpty()) queueChanged();
+        }
+        return kicked;
+    }
+
+    /**
+     * Move a member from this queue to another topic's queue in a single
+     * step. They keep their message and the time they originally joined, and
+     * are placed in the target queue by that time, as if they had joined it
+     * back then.
+     *
+     * @param memberId The ID of the member to move
+     * @param target The Topic whose queue they move to
+     *
+     * @return True if the member was moved, false if they were not in this
+     *     queue or were already in the target's
+     */
+    public boolean moveToQueue(long memberId, Topic target) {
+        if (target == this) return false;
+
+        // always lock the two queues in the same order, so opposite moves cannot deadlock
+        int order = name.compareToIgnoreCase(target.name);
+        if (order == 0) order = Integer.compare(System.identityHashCode(this), System.identityHashCode(target));
+        Object firstLock = order < 0 ? queue : target.queue;
+        Object secondLock = order < 0 ? target.queue : queue;
+
+        synchronized (firstLock) {
+            synchronized (secondLock) {
+                if (!queue.contains(memberId) || target.queue.contains(memberId)) return false;
+
+                QueueMember member = queue.remove(memberId);
+                target.queue.addByEnqueuedAt(member);
+                journal.queueMoved(name, target.name, memberId, member.getMessage(), member.getEnqueuedAt());
+                queueChanged();
+                target.queueChanged();
+                target.scheduleExpiry(member);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Drop a member from the queue because they cannot be served, e.g. they
+     * left the guild or went offline.
+     *
+     * @param memberId The ID of the member to drop
+     *
+     * @return True if the member was removed, false if they were not queued
+     */
+    boolean evictFromQueue(long memberId) {
+        synchronized (queue) {
+            if (queue.remove(memberId) == null) return false;
+            journal.queueLeft(name, memberId);
+            queueChanged();
+            return true;
+        }
+    }
+
+    /**
+     * Start counting down a queue entry's time to live, if this topic has
+     * one. The countdown starts from when the member originally joined, so
+     * entries that are returned, moved or restored keep their deadline.
+     *
+     * @param member The queue entry
+     */
+    private void scheduleExpiry(QueueMember member) {
+        long ttlMinutes = Config.QUEUE_TTL_MINUTES.getOrDefault(name.toLowerCase(),
+            Config.QUEUE_TTL_MINUTES.getOrDefault("*", 0L));
+        if (ttlMinutes <= 0) return;
+
+        long delay = member.getEnqueuedAt() + TimeUnit.MINUTES.toMillis(ttlMinutes) - System.currentTimeMillis();
+        TimingWheel.QUEUE_EXPIRY.schedule(delay, () -> expire(member));
+    }
+
+    /**
+     * Drop a queue entry whose time to live ran out. Nothing happens if the
+     * member has left the queue since, or was served and joined again.
+     *
+     * @param member The queue entry that expired
+     */
+    private void expire(QueueMember member) {
+        synchronized (queue) {
+            QueueMember current = queue.get(member.getMemberId());
+            if (current == null || current.getEnqueuedAt() != member.getEnqueuedAt()) return;
+
+            queue.remove(member.getMemberId());
+            journal.queueLeft(name, member.getMemberId());
+            queueChanged();
+        }
+        Metrics.evicted(Metrics.Eviction.EXPIRED);
+    }
+
+    /**
+     * Remove everyone from the queue in constant time.
+     *
+     * @return The number of members who were removed
+     */
+    public int clearQueue() {
+        synchronized (queue) {
+            int cleared = queue.size();
+            queue.clear();
+            journal.queueCleared(name);
+            queueChanged();
+            return cleared;
+        }
     }
 
     /**
@@ -73,7 +278,46 @@ public class Topic {
      * @return True if the member is in the queue, false otherwise
      */
     public boolean isInQueue(Member member) {
-        return queue.contains(new QueueMember(member));
+        synchronized (queue) {
+            return queue.contains(member.getIdLong());
+        }
+    }
+
+    /**
+     * Check if the member with the given ID is inside the queue.
+     *
+     * @param memberId The ID of the member to check
+     *
+     * @return True if the member is in the queue, false otherwise
+     */
+    public boolean isInQueue(long memberId) {
+        synchronized (queue) {
+            return queue.contains(memberId);
+        }
+    }
+
+    /**
+     * Get a Member's position in the queue.
+     *
+     * @param member The Member to look up
+     *
+     * @return The member's 1-based position, or 0 if they are not in the queue
+     */
+    public int getQueuePosition(Member member) {
+        synchronized (queue) {
+            return queue.positionOf(member.getIdLong());
+        }
+    }
+
+    /**
+     * Get the number of members waiting in the queue.
+     *
+     * @return The size of the queue
+     */
+    public int getQueueSize() {
+        synchronized (queue) {
+            return queue.size();
+        }
     }
 
     /**
@@ -82,39 +326,220 @@ public class Topic {
      * @return The QueueMembers in this queue
      */
     public QueueMember[] getMembersInQueue() {
-        return queue.toArray(new QueueMember[0]);
+        synchronized (queue) {
+            return queue.toList().toArray(new QueueMember[0]);
+        }
+    }
+
+    /**
+     * Returns part of the queue, e.g. one page of a queue listing.
+     *
+     * @param offset The 0-based position of the first QueueMember to return
+     * @param count The most QueueMembers to return
+     *
+     * @return The QueueMembers from the given position on
+     */
+    public List<QueueMember> getMembersInQueue(int offset, int count) {
+        synchronized (queue) {
+            return queue.slice(offset, count);
+        }
     }
 
     /**
-     * Removes and return the next QueueMember in the queue.
+     * Get when the member at the front of the queue joined it.
      *
-     * @return The QueueMember at the front of the queue
+     * @return The front member's join time in epoch milliseconds, or 0 if
+     *     the queue is empty
+     */
+    public long getOldestEnqueuedAt() {
+        synchronized (queue) {
+            QueueMember head = queue.peek();
+            return head == null ? 0 : head.getEnqueuedAt();
+        }
+    }
+
+    /**
+     * Get a number that changes whenever the queue changes.
+     *
+     * @return The queue's version
+     */
+    public int getQueueVersion() {
+        synchronized (queue) {
+            return queue.getVersion();
+        }
+    }
+
+    /**
+     * Removes and return the next QueueMember in the queue. Checking for an
+     * empty queue and taking its head happen atomically, so two mentors can
+     * never be handed the same mentee.
+     *
+     * @return The QueueMember at the front of the queue, or null if the queue
+     *     is empty
      */
     public QueueMember popFromQueue() {
-        return queue.remove();
+        synchronized (queue) {
+            QueueMember member = queue.poll();
+            if (member != null) {
+                journal.queuePopped(name, member.getMemberId());
+                queueChanged();
+            }
+            return member;
+        }
+    }
+
+    /**
+     * Tell the server's queue heads about a change to the queue. Must be
+     * called while holding the queue's lock.
+     */
+    private void queueChanged() {
+        heads.update(this, queue.peek(), queue.size());
     }
 
     /**
-     * Create a new mentoring room for this topic.
+     * Open a mentoring room for a mentee. The mentee is resolved from their ID
+     * first, then a room is taken from this topic's pool and opened to them.
+     * If the room cannot be opened, it goes back to the pool. The room is
+     * registered with this topic once it is open.
      *
      * @param mentee The mentee for this room
      *
-     * @return The new Room
+     * @return A future that completes with the opened Room
+     */
+    public CompletableFuture<Room> createRoom(QueueMember mentee) {
+        return server.retrieveMember(mentee.getMemberId())
+            .thenCompose(member -> pool.acquire()
+                .thenCompose(room -> room.open(member, mentee.getMessage())
+                    .whenComplete((opened, error) -> {
+                        if (error != null) pool.release(room);
+                    })))
+            .thenApply(room -> {
+                long now = System.currentTimeMillis();
+                room.opened(now);
+                sessionStarts.put(room.getName(), now);
+                waits.sessionStarted(now);
+                rooms.put(room.getName(), room);
+                server.registerRoom(room);
+                journal.roomOpened(name, room.getName(),
+                    room.getTextChannel().getIdLong(), room.getVoiceChannel().getIdLong());
+                return room;
+            });
+    }
+
+    /**
+     * Register a recovered Room with this topic without recording it in the
+     * journal again.
+     *
+     * @param room The Room to restore
      */
-    public Room createRoom(QueueMember mentee) {
-        Room room = new Room(this, mentee);
+    void restoreRoom(Room room) {
+        long now = System.currentTimeMillis();
+        room.opened(now);
+        waits.sessionStarted(now);
         rooms.put(room.getName(), room);
-        return room;
+        server.registerRoom(room);
     }
 
     /**
-     * Delete a Room
+     * Close a Room. The room is unregistered immediately, then recycled into
+     * this topic's pool or deleted asynchronously. Closing a room that is
+     * already closed does nothing, so a mentor's $finish and the idle room
+     * reaper cannot both release it.
+     *
+     * @param room The Room to close
      *
-     * @param room The Room to delete
+     * @return A future that completes once the room is recycled or deleted
      */
-    public void deleteRoom(Room room) {
-        room.delete();
-        rooms.remove(room.getName());
+    public CompletableFuture<Void> deleteRoom(Room room) {
+        return closeRoom(room).orElseGet(() -> CompletableFuture.completedFuture(null));
+    }
+
+    /**
+     * Close a Room if it is still open, as described for deleteRoom.
+     *
+     * @param room The Room to close
+     *
+     * @return A future that completes once the room is recycled or deleted,
+     *     or an empty Optional if the room was already closed
+     */
+    Optional<CompletableFuture<Void>> closeRoom(Room room) {
+        if (!rooms.remove(room.getName(), room)) return Optional.empty();
+
+        long now = System.currentTimeMillis();
+        Long startedAt = sessionStarts.remove(room.getName());
+        waits.sessionEnded(startedAt == null ? -1 : now - startedAt, now);
+        server.unregisterRoom(room);
+        journal.roomClosed(name, room.getName());
+        return Optional.of(pool.release(room));
+    }
+
+    /**
+     * Estimate how long the mentee at a queue position will wait for a room,
+     * from the average session length and the number of active mentors.
+     *
+     * @param position The mentee's 1-based queue position
+     *
+     * @return The estimated wait in milliseconds, or -1 if no session has
+     *     ended yet
+     */
+    public long estimateWaitMillis(int position) {
+        return waits.estimateMillis(position, System.currentTimeMillis());
+    }
+
+    /**
+     * Get this topic's open rooms.
+     *
+     * @return A live view of the open rooms
+     */
+    Collection<Room> getRooms() {
+        return rooms.values();
+    }
+
+    /**
+     * Get the number of open rooms for this topic.
+     *
+     * @return The number of open rooms
+     */
+    public int getRoomCount() {
+        return rooms.size();
+    }
+
+    /**
+     * Take the lowest room number that is not in use.
+     *
+     * @return The room number
+     */
+    synchronized int allocateRoomNumber() {
+        int number = roomNumbers.nextClearBit(1);
+        roomNumbers.set(number);
+        return number;
+    }
+
+    /**
+     * Mark a room number as in use, e.g. for a room restored after a restart.
+     *
+     * @param number The room number
+     */
+    synchronized void reserveRoomNumber(int number) {
+        if (number > 0) roomNumbers.set(number);
+    }
+
+    /**
+     * Free a room number once its room's channels are deleted.
+     *
+     * @param number The room number
+     */
+    synchronized void releaseRoomNumber(int number) {
+        if (number > 0) roomNumbers.clear(number);
+    }
+
+    /**
+     * Get the pool of idle rooms for this Topic.
+     *
+     * @return This Topic's room pool
+     */
+    RoomPool getRoomPool() {
+        return pool;
     }
 
     /**
@@ -148,6 +573,15 @@ public class Topic {
         return role;
     }
 
+    /**
+     * Get the Server this Topic belongs to.
+     *
+     * @return This Topic's Server
+     */
+    public Server getServer() {
+        return server;
+    }
+
     /**
      * Get the category for this Topic.
      *
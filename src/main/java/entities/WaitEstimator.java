@@ -0,0 +1,105 @@
+package entities;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streaming statistics about a topic's mentoring sessions, used to estimate
+ * how long a mentee will wait. Only running averages are kept, so recording a
+ * session and estimating a wait both take constant time.
+ *
+ * Sessions last from a room opening to it being closed. Their length is an
+ * exponentially weighted moving average over sessions. The number of active
+ * mentors is the number of open rooms, averaged over time with exponential
+ * decay so that a mentor between two sessions still counts.
+ */
+class WaitEstimator {
+    /**
+     * Weight of the newest session in the average session length
+     */
+    private static final double SESSION_WEIGHT = 0.2;
+
+    /**
+     * Time constant of the decay of the active mentor average
+     */
+    private static final long MENTOR_DECAY_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Average session length in milliseconds, or 0 before the first session
+     * ends
+     */
+    private double sessionMillis;
+
+    private int openSessions;
+
+    /**
+     * Time-weighted average of openSessions
+     */
+    private double activeMentors;
+
+    /**
+     * When activeMentors was last brought up to date, in epoch milliseconds,
+     * or 0 if it never was
+     */
+    private long updatedAt;
+
+    /**
+     * Record that a room was opened for a mentee.
+     *
+     * @param now The current time in epoch milliseconds
+     */
+    synchronized void sessionStarted(long now) {
+        decay(now);
+        openSessions++;
+    }
+
+    /**
+     * Record that a room was closed.
+     *
+     * @param durationMillis How long the session lasted, or -1 if it is not
+     *     known, e.g. for a room restored after a restart
+     * @param now The current time in epoch milliseconds
+     */
+    synchronized void sessionEnded(long durationMillis, long now) {
+        decay(now);
+        openSessions = Math.max(0, openSessions - 1);
+        if (durationMillis < 0) return;
+
+        sessionMillis = sessionMillis == 0
+            ? Math.max(1, durationMillis)
+            : sessionMillis + SESSION_WEIGHT * (durationMillis - sessionMillis);
+    }
+
+    /**
+     * Estimate how long the mentee at a queue position will wait for a room:
+     * one session for every mentee up to and including them, shared among
+     * the active mentors.
+     *
+     * @param position The mentee's 1-based queue position
+     * @param now The current time in epoch milliseconds
+     *
+     * @return The estimated wait in milliseconds, or -1 if no session has
+     *     ended yet
+     */
+    synchronized long estimateMillis(int position, long now) {
+        if (sessionMillis == 0) return -1;
+
+        decay(now);
+        double mentors = Math.max(1, Math.max(openSessions, activeMentors));
+        return Math.round(position * sessionMillis / mentors);
+    }
+
+    /**
+     * Fold the time since the last update into the active mentor average.
+     *
+     * @param now The current time in epoch milliseconds
+     */
+    private void decay(long now) {
+        if (updatedAt == 0) {
+            activeMentors = openSessions;
+        } else if (now > updatedAt) {
+            double weight = 1 - Math.exp(-(now - updatedAt) / (double) MENTOR_DECAY_MILLIS);
+            activeMentors += weight * (openSessions - activeMentors);
+        }
+        updatedAt = Math.max(updatedAt, now);
+    }
+}
@@ -1,12 +1,19 @@
 package info;
 
+import entities.QueueMember;
 import entities.Room;
 import entities.Topic;
+import info.MessageDispatcher.Priority;
+import net.dv8tion.jda.api.entities.Invite;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.TextChannel;
 
+import java.util.List;
+import java.util.stream.Collectors;
+
 /**
- * Responses that the bot gives the user
+ * Responses that the bot gives the user. Responses are sent through the
+ * MessageDispatcher, which merges responses to the same channel.
  */
 public class BotResponses {
     /**
@@ -16,7 +23,7 @@ public class BotResponses {
      * @param member The member to ping/mention
      */
     public static void noPermission(TextChannel channel, Member member) {
-        channel.sendMessage(member.getAsMention() + " You do not have permission to run this command.").queue();
+        MessageDispatcher.send(channel, Priority.ROUTINE, member.getAsMention() + " You do not have permission to run this command.");
     }
 
     /**
@@ -26,7 +33,7 @@ public class BotResponses {
      * @param member The member to ping/mention
      */
     public static void noAdminPermission(TextChannel channel, Member member) {
-        channel.sendMessage(member.getAsMention() + " You must have administrator permission to run this command.").queue();
+        MessageDispatcher.send(channel, Priority.ROUTINE, member.getAsMention() + " You must have administrator permission to run this command.");
     }
 
     /**
@@ -36,7 +43,7 @@ public class BotResponses {
      * @param member The member to ping/mention
      */
     public static void noSuchCommand(TextChannel channel, Member member) {
-        channel.sendMessage(member.getAsMention() + " Command does not exist! Try $help for a list of valid commands.").queue();
+        MessageDispatcher.send(channel, Priority.ROUTINE, member.getAsMention() + " Command does not exist! Try $help for a list of valid commands.");
     }
 
     /**
@@ -46,9 +53,9 @@ public class BotResponses {
      * @param member The member to ping/mention
      */
     public static void runInTopicChannel(TextChannel channel, Member member) {
-        channel.sendMessage(String.format(
+        MessageDispatcher.send(channel, Priority.ROUTINE, String.format(
             "%s This command must be run inside a topic's text channel.",
-            member.getAsMention())).queue();
+            member.getAsMention()));
     }
 
     /**
@@ -59,40 +66,43 @@ public class BotResponses {
      * @param prompt The member's question
      */
     public static void topicChannelPrompt(TextChannel channel, Member mentee, String prompt) {
-        channel.sendMessage(String.format(
+        MessageDispatcher.send(channel, Priority.MENTOR, String.format(
             "%s's question: %s",
             mentee.getEffectiveName(),
-            prompt)).queue();
+            prompt));
     }
 
     /**
-     * Confirmation feedback for clearing the queue
+     * Warns a room's mentor and mentee that the room is about to be closed
+     * because nobody has used it
      *
-     * @param channel The text channel to send message to
-     * @param member The member to ping/mention
-     * @param topic The topic queue that has been cleared
+     * @param channel The room's text channel
+     * @param idleMinutes How long the room has been idle
+     * @param remainingMinutes How long until the room is closed
      */
-    public static void queueCleared(TextChannel channel, Member member, Topic topic) {
-        channel.sendMessage(String.format(
-            "%s has cleared the \"%s\" queue.",
-            member.getAsMention(),
-            topic.getName())).queue();
+    public static void roomIdleWarning(TextChannel channel, long idleMinutes, long remainingMinutes) {
+        MessageDispatcher.send(channel, Priority.MENTOR, String.format(
+            "This room has been idle for %d minutes and will be closed in %d minutes. Send a message or join "
+                + "the voice channel to keep it open.",
+            idleMinutes,
+            remainingMinutes));
     }
 
     /**
-     * Shows the list of mentees in a queue
+     * Confirmation feedback for clearing the queue
      *
      * @param channel The text channel to send message to
      * @param member The member to ping/mention
-     * @param topic The topic queue that the mentees are in
-     * @param menteeList The list of mentees in queue
+     * @param topic The topic queue that has been cleared
+     * @param cleared The number of members who were removed
      */
-    public static void showQueueMembers(TextChannel channel, Member member, Topic topic, String menteeList) {
-        channel.sendMessage(String.format(
-            "%s Members in \"%s\" queue:\n%s",
+    public static void queueCleared(TextChannel channel, Member member, Topic topic, int cleared) {
+        MessageDispatcher.send(channel, Priority.MENTOR, String.format(
+            "%s has cleared the \"%s\" queue, removing %d %s.",
             member.getAsMention(),
             topic.getName(),
-            menteeList)).queue();
+            cleared,
+            cleared == 1 ? "member" : "members"));
     }
 
     /**
@@ -103,10 +113,22 @@ public class BotResponses {
      * @param topic The topic queue that is empty
      */
     public static void queueIsEmpty(TextChannel channel, Member member, Topic topic) {
-        channel.sendMessage(String.format(
+        MessageDispatcher.send(channel, Priority.MENTOR, String.format(
             "%s Queue \"%s\" is empty.",
             member.getAsMention(),
-            topic.getName())).queue();
+            topic.getName()));
+    }
+
+    /**
+     * Reports that every queue a mentor could take a mentee from is empty
+     *
+     * @param channel The text channel to send message to
+     * @param member The mentor to ping/mention
+     */
+    public static void mentoredQueuesAreEmpty(TextChannel channel, Member member) {
+        MessageDispatcher.send(channel, Priority.MENTOR, String.format(
+            "%s Every queue you mentor is empty.",
+            member.getAsMention()));
     }
 
     /**
@@ -116,14 +138,32 @@ public class BotResponses {
      * @param member The mentor who is ready
      * @param mentee The mentee to be mentored
      * @param room The room that referncing will take place in
+     * @param invite An invite to the room's voice channel, or null to mention
+     *     the voice channel instead
      */
-    public static void mentorIsReady(TextChannel channel, Member member, Member mentee, Room room) {
-        channel.sendMessage(String.format(
+    public static void mentorIsReady(TextChannel channel, Member member, QueueMember mentee, Room room, Invite invite) {
+        MessageDispatcher.send(channel, Priority.MENTOR, String.format(
             "%s is ready for %s.\n\nText channel: %s\nVoice channel: %s",
             member.getAsMention(),
             mentee.getAsMention(),
             room.getTextChannel().getAsMention(),
-            room.getVoiceChannelInvite().getUrl())).queue();
+            invite != null ? invite.getUrl() : room.getVoiceChannel().getAsMention()));
+    }
+
+    /**
+     * Tells the mentor that a room could not be created for their mentee
+     *
+     * @param channel The text channel to send message to
+     * @param member The mentor to ping/mention
+     * @param mentee The mentee who was put back into the queue
+     * @param topic The topic that the room was for
+     */
+    public static void roomCreationFailed(TextChannel channel, Member member, QueueMember mentee, Topic topic) {
+        MessageDispatcher.send(channel, Priority.MENTOR, String.format(
+            "%s Could not create a room for %s. They have been put back into the \"%s\" queue.",
+            member.getAsMention(),
+            mentee.getAsMention(),
+            topic.getName()));
     }
 
     /**
@@ -135,11 +175,11 @@ public class BotResponses {
      * @param topic The topic that the mentee is not queued for
      */
     public static void notInQueue(TextChannel channel, Member member, Member mentee, Topic topic) {
-        channel.sendMessage(String.format(
+        MessageDispatcher.send(channel, Priority.MENTOR, String.format(
             "%s User \"%s\" is not in the queue for topic \"%s\".",
             member.getAsMention(),
             mentee.getEffectiveName(),
-            topic.getName())).queue();
+            topic.getName()));
     }
 
     /**
@@ -150,10 +190,10 @@ public class BotResponses {
      * @param topic The topic that the mentee is not queued for
      */
     public static void selfNotInQueue(TextChannel channel, Member member, Topic topic) {
-        channel.sendMessage(String.format(
+        MessageDispatcher.send(channel, Priority.ROUTINE, String.format(
             "%s You are not in the queue for topic \"%s\".",
             member.getAsMention(),
-            topic.getName())).queue();
+            topic.getName()));
     }
 
     /**
@@ -164,10 +204,10 @@ public class BotResponses {
      * @param topic The topic that the mentee is not queued for
      */
     public static void alreadyInQueue(TextChannel channel, Member member, Topic topic) {
-        channel.sendMessage(String.format(
+        MessageDispatcher.send(channel, Priority.ROUTINE, String.format(
             "%s You are already in the queue for topic \"%s\".",
             member.getAsMention(),
-            topic.getName())).queue();
+            topic.getName()));
     }
 
     /**
@@ -175,13 +215,78 @@ public class BotResponses {
      *
      * @param channel The text channel to send message to
      * @param member The member to ping/mention
-     * @param topicName The topic queue which they have joined
+     * @param topic The topic queue which they have joined
+     * @param position The member's 1-based position in the queue
+     * @param waitMillis The estimated wait in milliseconds, or -1 if there is
+     *     no estimate yet
+     */
+    public static void joinedQueue(TextChannel channel, Member member, Topic topic, int position, long waitMillis) {
+        MessageDispatcher.send(channel, Priority.ROUTINE, String.format(
+            "%s has joined the \"%s\" queue at number %d. Estimated wait: %s.",
+            member.getAsMention(),
+            topic.getName(),
+            position,
+            describeWait(waitMillis)));
+    }
+
+    /**
+     * Tells the user how long they can expect to wait in a queue
+     *
+     * @param channel The text channel to send message to
+     * @param member The member to ping/mention
+     * @param topic The topic queue the estimate is for
+     * @param position The member's 1-based position in the queue, or 0 if
+     *     they are not in it
+     * @param queueSize The number of members in the queue
+     * @param waitMillis The estimated wait in milliseconds, or -1 if there is
+     *     no estimate yet
      */
-    public static void joinedQueue(TextChannel channel, Member member, String topicName) {
-        channel.sendMessage(String.format(
-            "%s has joined the \"%s\" queue.",
+    public static void waitEstimate(TextChannel channel, Member member, Topic topic, int position, int queueSize,
+                                    long waitMillis) {
+        String standing = position > 0
+            ? String.format("You are number %d of %d in the \"%s\" queue.", position, queueSize, topic.getName())
+            : String.format("If you join the \"%s\" queue now, you will be number %d.", topic.getName(), queueSize + 1);
+        MessageDispatcher.send(channel, Priority.ROUTINE, String.format(
+            "%s %s Estimated wait: %s.",
             member.getAsMention(),
-            topicName)).queue();
+            standing,
+            describeWait(waitMillis)));
+    }
+
+    /**
+     * Describe an estimated wait in words
+     *
+     * @param waitMillis The estimated wait in milliseconds, or -1 if there is
+     *     no estimate yet
+     *
+     * @return The description
+     */
+    private static String describeWait(long waitMillis) {
+        if (waitMillis < 0) return "unknown until the first session ends";
+
+        long minutes = Math.round(waitMillis / 60_000.0);
+        if (minutes < 1) return "less than a minute";
+        if (minutes == 1) return "about 1 minute";
+        if (minutes < 120) return "about " + minutes + " minutes";
+        return String.format("about %.1f hours", minutes / 60.0);
+    }
+
+    /**
+     * Tells the mentee where they stand in a queue
+     *
+     * @param channel The text channel to send message to
+     * @param member The mentee to ping/mention
+     * @param topic The topic queue that the mentee is in
+     * @param position The mentee's 1-based position in the queue
+     * @param queueSize The number of members in the queue
+     */
+    public static void queuePosition(TextChannel channel, Member member, Topic topic, int position, int queueSize) {
+        MessageDispatcher.send(channel, Priority.ROUTINE, String.format(
+            "%s You are number %d of %d in the \"%s\" queue.",
+            member.getAsMention(),
+            position,
+            queueSize,
+            topic.getName()));
     }
 
     /**
@@ -192,40 +297,81 @@ public class BotResponses {
      * @param topicName The topic queue which they have left
      */
     public static void leftQueue(TextChannel channel, Member member, String topicName) {
-        channel.sendMessage(String.format(
+        MessageDispatcher.send(channel, Priority.ROUTINE, String.format(
             "%s has left the \"%s\" queue.",
             member.getAsMention(),
-            topicName)).queue();
+            topicName));
     }
 
     /**
-     * Notifies a mentee that they have been kicked from a queue
+     * Notifies mentees that they have been kicked from a queue, and the
+     * mentor which of the members they named were not queued
      *
      * @param channel The text channel to send message to
      * @param member The member who kicked them
-     * @param mentee The mentee who was kicked and is being notified
-     * @param reason The reason the mentee was kicked
+     * @param kicked The mentees who were kicked and are being notified
+     * @param notQueued The named members who were not in the queue
+     * @param topic The topic queue they were kicked from
+     * @param reason The reason the mentees were kicked
      */
-    public static void kickedFromQueue(TextChannel channel, Member member, Member mentee, String reason) {
-        channel.sendMessage(String.format(
-            "User %s was kicked out of the queue by %s. Reason: %s",
+    public static void kickedFromQueue(TextChannel channel, Member member, List<Member> kicked,
+                                       List<Member> notQueued, Topic topic, String reason) {
+        StringBuilder message = new StringBuilder();
+        if (kicked.isEmpty()) {
+            message.append(String.format("%s Nobody was kicked from the \"%s\" queue.",
+                member.getAsMention(), topic.getName()));
+        } else {
+            message.append(String.format("%s %s %s kicked out of the \"%s\" queue by %s. Reason: %s",
+                kicked.size() == 1 ? "User" : "Users",
+                kicked.stream().map(Member::getAsMention).collect(Collectors.joining(", ")),
+                kicked.size() == 1 ? "was" : "were",
+                topic.getName(),
+                member.getAsMention(),
+                reason));
+        }
+        if (!notQueued.isEmpty()) {
+            message.append(String.format("\nNot in the queue: %s",
+                notQueued.stream().map(Member::getEffectiveName).collect(Collectors.joining(", "))));
+        }
+        MessageDispatcher.send(channel, Priority.MENTOR, message.toString());
+    }
+
+    /**
+     * Confirms that a mentor moved a mentee to another queue
+     *
+     * @param channel The text channel to send message to
+     * @param member The mentor who moved them
+     * @param mentee The mentee who was moved
+     * @param from The topic queue they left
+     * @param to The topic queue they joined
+     * @param position The mentee's 1-based position in their new queue
+     */
+    public static void movedToQueue(TextChannel channel, Member member, Member mentee, Topic from, Topic to,
+                                    int position) {
+        MessageDispatcher.send(channel, Priority.MENTOR, String.format(
+            "%s was moved from the \"%s\" queue to the \"%s\" queue by %s and placed by when they first joined. "
+                + "They are number %d.",
             mentee.getAsMention(),
+            from.getName(),
+            to.getName(),
             member.getAsMention(),
-            reason)).queue();
+            position));
     }
 
     /**
-     * Shows the user a list of topics for mentoring
+     * Lets the mentor know that a mentee is already in a queue
      *
      * @param channel The text channel to send message to
-     * @param member The member to ping/mention
-     * @param topicList The list of mentoring topics
+     * @param member The mentor to be pinged/mentioned
+     * @param mentee The mentee who is already queued
+     * @param topic The topic that the mentee is already queued for
      */
-    public static void sendTopicList(TextChannel channel, Member member, String topicList) {
-        channel.sendMessage(String.format(
-            "%s List of topics:\n%s",
+    public static void alreadyInOtherQueue(TextChannel channel, Member member, Member mentee, Topic topic) {
+        MessageDispatcher.send(channel, Priority.MENTOR, String.format(
+            "%s User \"%s\" is already in the queue for topic \"%s\".",
             member.getAsMention(),
-            topicList)).queue();
+            mentee.getEffectiveName(),
+            topic.getName()));
     }
 
     /**
@@ -236,10 +382,10 @@ public class BotResponses {
      * @param topicName The topic that was deleted
      */
     public static void topicDeleted(TextChannel channel, Member member, String topicName) {
-        channel.sendMessage(String.format(
+        MessageDispatcher.send(channel, Priority.ROUTINE, String.format(
             "%s Topic role \"%s\" has been deleted.",
             member.getAsMention(),
-            topicName)).queue();
+            topicName));
     }
 
     /**
@@ -250,10 +396,10 @@ public class BotResponses {
      * @param topicName The topic that was created
      */
     public static void topicCreated(TextChannel channel, Member member, String topicName) {
-        channel.sendMessage(String.format(
+        MessageDispatcher.send(channel, Priority.ROUTINE, String.format(
             "%s Topic role \"%s\" has been created.",
             member.getAsMention(),
-            topicName)).queue();
+            topicName));
     }
 
     /**
@@ -264,10 +410,10 @@ public class BotResponses {
      * @param topicName The topic that does not exist
      */
     public static void noSuchTopic(TextChannel channel, Member member, String topicName) {
-        channel.sendMessage(String.format(
+        MessageDispatcher.send(channel, Priority.ROUTINE, String.format(
             "%s Topic \"%s\" does not exist.",
             member.getAsMention(),
-            topicName)).queue();
+            topicName));
     }
 
     /**
@@ -279,10 +425,10 @@ public class BotResponses {
      *     the command prefix
      */
     public static void invalidParameters(TextChannel channel, Member member, String correctFormat) {
-        channel.sendMessage(String.format(
+        MessageDispatcher.send(channel, Priority.ROUTINE, String.format(
             "%s Invalid parameters. Correct format: `%s%s`",
             member.getAsMention(),
             Config.COMMAND_PREFIX,
-            correctFormat)).queue();
+            correctFormat));
     }
 }
@@ -1,5 +1,7 @@
 package info;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -19,4 +21,212 @@ public class Config {
      * The prefix character used for bot commands.
      */
     public static String COMMAND_PREFIX = "$";
+
+    /**
+     * How commands are dispatched. "inline" runs every command on JDA's event
+     * thread; "guild" gives each guild its own ordered mailbox so that a slow
+     * guild does not hold up the others. Set with MENTORBOT_DISPATCH_MODE.
+     */
+    public static String DISPATCH_MODE = envRequired("MENTORBOT_DISPATCH_MODE", "guild");
+
+    /**
+     * Number of worker threads shared by all guild mailboxes. Set with
+     * MENTORBOT_DISPATCH_THREADS.
+     */
+    public static int DISPATCH_THREADS = Integer.parseInt(envRequired("MENTORBOT_DISPATCH_THREADS", "4"));
+
+    /**
+     * How guild members are cached. "all" downloads every member of every
+     * guild at startup; "lazy" skips chunking and only caches mentors, admins
+     * and queued members, fetching anyone else by ID when needed. Set with
+     * MENTORBOT_MEMBER_CACHE.
+     */
+    public static String MEMBER_CACHE_MODE = envRequired("MENTORBOT_MEMBER_CACHE", "all");
+
+    /**
+     * Directory that queue journals and snapshots are written to. An empty
+     * value keeps queues in memory only. Heroku's dyno filesystem is wiped on
+     * restart, so this should point at persistent storage there. Set with
+     * MENTORBOT_JOURNAL_DIR.
+     */
+    public static String JOURNAL_DIR = env("MENTORBOT_JOURNAL_DIR", "journal");
+
+    /**
+     * How often buffered journal records are written and fsynced.
+     */
+    public static long JOURNAL_FLUSH_MILLIS = 50;
+
+    /**
+     * How often a journal is compacted into a snapshot while it is in use.
+     */
+    public static long JOURNAL_SNAPSHOT_SECONDS = 5 * 60;
+
+    /**
+     * How long a response waits to be merged with other responses for the
+     * same channel before it is sent.
+     */
+    public static long MESSAGE_COALESCE_MILLIS = 20;
+
+    /**
+     * Local port that metrics are served on in the Prometheus text format. An
+     * empty value or `off` turns the metrics endpoint off. Set with
+     * MENTORBOT_METRICS_PORT.
+     */
+    public static String METRICS_PORT = envOptional("MENTORBOT_METRICS_PORT", "9464");
+
+    /**
+     * Fewest idle rooms kept ready for each topic. Every topic shares the
+     * mentoring category, so anything above 0 costs two channels per topic
+     * even for topics nobody asks about. Set with MENTORBOT_ROOM_POOL_MIN.
+     */
+    public static int ROOM_POOL_MIN = Integer.parseInt(envRequired("MENTORBOT_ROOM_POOL_MIN", "0"));
+
+    /**
+     * Most idle rooms kept ready for each topic. Every room is two channels,
+     * and a category holds at most 50. Set with MENTORBOT_ROOM_POOL_MAX.
+     */
+    public static int ROOM_POOL_MAX = Integer.parseInt(envRequired("MENTORBOT_ROOM_POOL_MAX", "5"));
+
+    /**
+     * How many minutes an open room may go without messages or anyone in its
+     * voice channel before it is closed as if a mentor ran $finish. An empty
+     * value, `off` or 0 keeps abandoned rooms open. Set with
+     * MENTORBOT_ROOM_IDLE.
+     */
+    public static String ROOM_IDLE_MINUTES = envOptional("MENTORBOT_ROOM_IDLE", "60");
+
+    /**
+     * How many minutes before an idle room is closed a warning is posted in
+     * it. Any message or voice activity after the warning keeps it open.
+     */
+    public static long ROOM_IDLE_WARNING_MINUTES = 5;
+
+    /**
+     * How many seconds of $ready demand each topic's idle rooms should cover.
+     */
+    public static int ROOM_POOL_LEAD_SECONDS = 60;
+
+    /**
+     * Head start, in seconds, that a plain $ready gives the front of a topic
+     * queue with one mentee over the fronts of other queues. A queue of n
+     * mentees gets 1/n of it, so quiet topics are not always passed over for
+     * busy ones. 0 serves whoever has waited longest. Set with
+     * MENTORBOT_READY_SHORT_QUEUE_BONUS.
+     */
+    public static long READY_SHORT_QUEUE_BONUS_SECONDS =
+        Long.parseLong(envRequired("MENTORBOT_READY_SHORT_QUEUE_BONUS", "0"));
+
+    /**
+     * How long mentees may wait in a queue before they are dropped from it,
+     * in minutes. Given as comma-separated `topic=minutes` pairs, where `*`
+     * sets the default for topics that are not listed, e.g. `*=180,web=60`.
+     * 0 or no entry means entries never expire. Set with MENTORBOT_QUEUE_TTL.
+     */
+    public static Map<String, Long> QUEUE_TTL_MINUTES = parseTopicMinutes(env("MENTORBOT_QUEUE_TTL", ""));
+
+    /**
+     * How many minutes a queued mentee may stay offline before they are
+     * dropped from every queue. Coming back online in time keeps their place.
+     * 0 or an empty value turns this off; otherwise the bot asks Discord for
+     * presence updates, which needs the privileged presence intent. Only
+     * works with the "all" member cache: in "lazy" mode mentees are judged by
+     * the cache policy before they queue, so JDA drops their presence updates,
+     * and the bot turns this off at startup with a warning. Set with
+     * MENTORBOT_QUEUE_OFFLINE_GRACE.
+     */
+    public static long QUEUE_OFFLINE_GRACE_MINUTES = parseMinutes("MENTORBOT_QUEUE_OFFLINE_GRACE",
+        env("MENTORBOT_QUEUE_OFFLINE_GRACE", ""));
+
+    /**
+     * Base URL of a local stand-in for Discord's REST API, e.g.
+     * http://127.0.0.1:8090. When set, channel, permission, invite, role and
+     * message calls go there instead of discord.com; login and the gateway
+     * still use Discord. Only meant for profiling and integration testing, so
+     * the host must be a loopback address and the bot's token is left off the
+     * redirected calls. Set with MENTORBOT_REST_URL.
+     */
+    public static String REST_URL = env("MENTORBOT_REST_URL", "");
+
+    /**
+     * Parse a number of minutes, so that a bad value stops the bot at startup
+     * rather than failing every time the setting is used.
+     *
+     * @param name The environment variable the value came from
+     * @param value The value, or an empty string for 0
+     *
+     * @return The number of minutes
+     */
+    private static long parseMinutes(String name, String value) {
+        long minutes;
+        try {
+            minutes = value.isEmpty() ? 0 : Long.parseLong(value);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException(name + " must be a number of minutes, not \"" + value + "\"", ex);
+        }
+        if (minutes < 0) throw new IllegalArgumentException(name + " must not be negative");
+        return minutes;
+    }
+
+    /**
+     * Parse a list of `topic=minutes` pairs.
+     *
+     * @param value The comma-separated pairs
+     *
+     * @return Map from lowercase topic names, or `*`, to minutes
+     */
+    private static Map<String, Long> parseTopicMinutes(String value) {
+        Map<String, Long> minutes = new HashMap<>();
+        for (String pair : value.split(",")) {
+            int equals = pair.indexOf('=');
+            if (equals < 0) continue;
+            minutes.put(pair.substring(0, equals).trim().toLowerCase(),
+                Long.parseLong(pair.substring(equals + 1).trim()));
+        }
+        return minutes;
+    }
+
+    /**
+     * Read a setting from the environment. A variable that is set but empty
+     * is returned as an empty string, which turns optional features off.
+     *
+     * @param name The environment variable to read
+     * @param defaultValue The value to use if the variable is not set
+     *
+     * @return The variable's trimmed value, or the default value
+     */
+    private static String env(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value == null ? defaultValue : value.trim();
+    }
+
+    /**
+     * Read a setting that can be turned off from the environment. Both an
+     * empty value and `off` read as an empty string, since an empty variable
+     * is easy to lose in deployment config.
+     *
+     * @param name The environment variable to read
+     * @param defaultValue The value to use if the variable is not set
+     *
+     * @return The variable's value, an empty string if it is turned off, or
+     *     the default value
+     */
+    private static String envOptional(String name, String defaultValue) {
+        String value = env(name, defaultValue);
+        return value.equalsIgnoreCase("off") ? "" : value;
+    }
+
+    /**
+     * Read a setting that cannot be turned off, such as a number or a mode,
+     * from the environment. An empty value falls back to the default like an
+     * unset one.
+     *
+     * @param name The environment variable to read
+     * @param defaultValue The value to use if the variable is not set or empty
+     *
+     * @return The variable's value, or the default value
+     */
+    private static String envRequired(String name, String defaultValue) {
+        String value = env(name, defaultValue);
+        return value.isEmpty() ? defaultValue : value;
+    }
 }
@@ -0,0 +1,178 @@
+package info;
+
+import metrics.Metrics;
+import metrics.Metrics.RestCall;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.TextChannel;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends the bot's text responses, merging the responses for a channel into as
+ * few messages as possible.
+ *
+ * Each channel has an outbox. A response waits in it for
+ * MESSAGE_COALESCE_MILLIS, then everything in the outbox is joined into
+ * messages of at most 2,000 characters. Only one message per channel is in
+ * flight at a time, so while JDA waits out a channel's rate limit bucket,
+ * new responses pile up and go out together in the next message. Mentor
+ * responses are sent ahead of routine ones.
+ */
+public class MessageDispatcher {
+    /**
+     * How urgently a response should be sent.
+     */
+    public enum Priority {
+        /**
+         * Responses a mentor is waiting on, e.g. their mentee being ready
+         */
+        MENTOR,
+
+        /**
+         * Acknowledgements and other routine responses
+         */
+        ROUTINE
+    }
+
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mentorbot-outbox");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Map from channel IDs to their outboxes. An outbox is dropped once it
+     * drains, so channels that were deleted or went quiet are not kept.
+     */
+    private static final ConcurrentHashMap<Long, Outbox> outboxes = new ConcurrentHashMap<>();
+
+    /**
+     * Queue a response to be sent to a channel.
+     *
+     * @param channel The text channel to send the response to
+     * @param priority How urgent the response is
+     * @param message The response. Responses over 2,000 characters are split
+     *     into several messages.
+     */
+    public static void send(TextChannel channel, Priority priority, String message) {
+        while (!outboxes.computeIfAbsent(channel.getIdLong(), id -> new Outbox(channel)).add(priority, message)) {
+            // the outbox drained and was dropped after it was looked up, so look again
+        }
+    }
+
+    /**
+     * The responses waiting to be sent to one channel.
+     */
+    private static class Outbox {
+        private final TextChannel channel;
+        private final ArrayDeque<String> mentor = new ArrayDeque<>();
+        private final ArrayDeque<String> routine = new ArrayDeque<>();
+
+        /**
+         * True while a flush is scheduled or a message is in flight
+         */
+        private boolean busy;
+
+        /**
+         * True once this outbox drained and was removed from `outboxes`
+         */
+        private boolean closed;
+
+        private Outbox(TextChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Queue a response in this outbox and schedule a flush if none is
+         * pending.
+         *
+         * @param priority How urgent the response is
+         * @param message The response
+         *
+         * @return False if this outbox was already dropped and the response
+         *     was not queued
+         */
+        private synchronized boolean add(Priority priority, String message) {
+            if (closed) return false;
+
+            ArrayDeque<String> queue = priority == Priority.MENTOR ? mentor : routine;
+            while (message.length() > Message.MAX_CONTENT_LENGTH) {
+                // split at the last line break that fits, or mid-line if there is none
+                int cut = message.lastIndexOf('\n', Message.MAX_CONTENT_LENGTH);
+                int rest = cut + 1;
+                if (cut <= 0) {
+                    cut = Message.MAX_CONTENT_LENGTH;
+                    rest = cut;
+                }
+                queue.add(message.substring(0, cut));
+                message = message.substring(rest);
+            }
+            queue.add(message);
+
+            if (!busy) {
+                busy = true;
+                scheduler.schedule(this::flush, Config.MESSAGE_COALESCE_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            return true;
+        }
+
+        /**
+         * Send the next message from this outbox. Once it has been sent, the
+         * outbox is flushed again until it is empty, then dropped.
+         */
+        private void flush() {
+            String message;
+            synchronized (this) {
+                message = nextMessage();
+                if (message == null) {
+                    busy = false;
+                    closed = true;
+                    outboxes.remove(channel.getIdLong(), this);
+                    return;
+                }
+            }
+
+            CompletableFuture<Message> sent;
+            try {
+                sent = Metrics.track(RestCall.MESSAGE, channel.sendMessage(message).submit());
+            } catch (RuntimeException ex) {
+                // JDA checks permissions before queueing; the message would fail again, so drop it and go on
+                ex.printStackTrace();
+                scheduler.execute(this::flush);
+                return;
+            }
+
+            sent.whenComplete((result, error) -> {
+                if (error != null) error.printStackTrace();
+                scheduler.execute(this::flush);
+            });
+        }
+
+        /**
+         * Join as many waiting responses as fit into one message, mentor
+         * responses first.
+         *
+         * @return The message to send, or null if the outbox is empty
+         */
+        private String nextMessage() {
+            StringBuilder builder = new StringBuilder();
+            while (true) {
+                ArrayDeque<String> queue = !mentor.isEmpty() ? mentor : routine;
+                String next = queue.peek();
+                if (next == null) break;
+
+                int length = builder.length() == 0 ? next.length() : builder.length() + 1 + next.length();
+                if (length > Message.MAX_CONTENT_LENGTH) break;
+
+                if (builder.length() > 0) builder.append('\n');
+                builder.append(queue.poll());
+            }
+            return builder.length() == 0 && mentor.isEmpty() && routine.isEmpty() ? null : builder.toString();
+        }
+    }
+}
@@ -1,20 +1,73 @@
 package launcher;
 
+import entities.RoomReaper;
+import info.Config;
 import listeners.MainEventListener;
+import metrics.MetricsServer;
 import net.dv8tion.jda.api.JDABuilder;
 import net.dv8tion.jda.api.requests.GatewayIntent;
 import net.dv8tion.jda.api.utils.ChunkingFilter;
+import net.dv8tion.jda.api.utils.cache.CacheFlag;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
 
 import javax.security.auth.login.LoginException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 public class Mentorbot {
     public static void main(String[] args) {
+        MainEventListener listener = new MainEventListener();
+        JDABuilder builder = JDABuilder.createDefault(System.getenv("MENTORBOT_TOKEN"))
+            .enableIntents(GatewayIntent.GUILD_MESSAGES, GatewayIntent.GUILD_MESSAGE_REACTIONS,
+                GatewayIntent.GUILD_MEMBERS)  // members for role updates, reactions for paging
+            .addEventListeners(listener);
+
+        if (Config.MEMBER_CACHE_MODE.equals("lazy")) {
+            // only keep members the bot actually works with
+            builder.setChunkingFilter(ChunkingFilter.NONE)
+                .setMemberCachePolicy(listener::shouldCacheMember);
+
+            if (Config.QUEUE_OFFLINE_GRACE_MINUTES > 0) {
+                // mentees are judged by the cache policy before they queue, so their presence is rarely tracked
+                System.err.println("MENTORBOT_QUEUE_OFFLINE_GRACE needs MENTORBOT_MEMBER_CACHE=all; "
+                    + "offline mentees will not be dropped from queues");
+                Config.QUEUE_OFFLINE_GRACE_MINUTES = 0;
+            }
+        } else {
+            builder.setChunkingFilter(ChunkingFilter.ALL);
+        }
+
+        if (Config.QUEUE_OFFLINE_GRACE_MINUTES > 0) {
+            // presences are only needed to drop queued mentees who went offline
+            builder.enableIntents(GatewayIntent.GUILD_PRESENCES)
+                .enableCache(CacheFlag.ONLINE_STATUS);
+        }
+
+        if (!Config.REST_URL.isEmpty()) {
+            System.out.println("Sending room REST calls to " + Config.REST_URL);
+            builder.setHttpClientBuilder(new OkHttpClient.Builder()
+                .addInterceptor(new RestRedirect(HttpUrl.get(Config.REST_URL))));
+        }
+
+        if (!Config.METRICS_PORT.isEmpty()) {
+            try {
+                new MetricsServer(Integer.parseInt(Config.METRICS_PORT), listener).start();
+            } catch (IOException ex) {
+                // the bot still works without metrics
+                ex.printStackTrace();
+            }
+        }
+
+        long roomIdleMinutes = Config.ROOM_IDLE_MINUTES.isEmpty() ? 0 : Long.parseLong(Config.ROOM_IDLE_MINUTES);
+        if (roomIdleMinutes > 0) {
+            // voice states are part of the default intents and cache, so room activity needs nothing more
+            new RoomReaper(listener::getServers, TimeUnit.MINUTES.toMillis(roomIdleMinutes),
+                TimeUnit.MINUTES.toMillis(Config.ROOM_IDLE_WARNING_MINUTES)).start();
+        }
+
         try {
-            JDABuilder.createDefault(System.getenv("MENTORBOT_TOKEN"))
-                .setChunkingFilter(ChunkingFilter.ALL)
-                .enableIntents(GatewayIntent.GUILD_MESSAGES)
-                .addEventListeners(new MainEventListener())
-                .build();
+            builder.build();
         } catch (LoginException ex) {
             ex.printStackTrace();
         }
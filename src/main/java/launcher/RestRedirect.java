@@ -0,0 +1,68 @@
+package launcher;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.regex.Pattern;
+
+/**
+ * Sends the REST calls that rooms and servers make to a local stand-in for
+ * Discord instead of discord.com. Everything else, e.g. logging in and
+ * fetching the gateway, still goes to Discord.
+ *
+ * The stand-in only ever runs next to the bot, so only loopback hosts are
+ * accepted, and redirected calls never carry the bot's token.
+ */
+class RestRedirect implements Interceptor {
+    /**
+     * Matches the paths of the channel, permission, invite, message and role
+     * routes the stand-in serves
+     */
+    private static final Pattern REDIRECTED = Pattern.compile(
+        "/api(/v\\d+)?/(channels/\\d+(/(permissions|invites|messages)(/.*)?)?|guilds/\\d+/(channels|roles)(/.*)?)");
+
+    private final HttpUrl target;
+
+    /**
+     * Constructs a redirect.
+     *
+     * @param target The stand-in's base URL; only its scheme, host and port
+     *     are used
+     *
+     * @throws IllegalArgumentException If the target is not a loopback host
+     */
+    RestRedirect(HttpUrl target) {
+        boolean loopback;
+        try {
+            loopback = InetAddress.getByName(target.host()).isLoopbackAddress();
+        } catch (UnknownHostException ex) {
+            throw new IllegalArgumentException("Unknown REST stand-in host " + target.host(), ex);
+        }
+        if (!loopback) {
+            throw new IllegalArgumentException("REST stand-in must run on a loopback host, not " + target.host());
+        }
+        this.target = target;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        HttpUrl url = request.url();
+        if (!REDIRECTED.matcher(url.encodedPath()).matches()) return chain.proceed(request);
+
+        HttpUrl redirected = url.newBuilder()
+            .scheme(target.scheme())
+            .host(target.host())
+            .port(target.port())
+            .build();
+        return chain.proceed(request.newBuilder()
+            .url(redirected)
+            .removeHeader("Authorization")
+            .build());
+    }
+}
@@ -0,0 +1,137 @@
+package listeners;
+
+import metrics.Histogram;
+import metrics.Metrics;
+
+import java.util.List;
+
+/**
+ * A bot command along with the metadata needed to dispatch it and describe it
+ * in `$help`.
+ */
+public class Command {
+    /**
+     * Who may run a command. Mentor commands are also checked against the
+     * specific topic by their handler.
+     */
+    public enum Tier {
+        EVERYONE,
+        MENTOR,
+        ADMIN
+    }
+
+    /**
+     * Marks a command that accepts any number of trailing arguments.
+     */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    private final String name;
+    private final List<String> aliases;
+    private final Tier tier;
+    private final String usage;
+    private final String description;
+    private final int minArgs;
+    private final int maxArgs;
+    private final CommandHandler handler;
+    private final Histogram latency;
+
+    /**
+     * Constructs a new Command.
+     *
+     * @param name The name used to call this command
+     * @param tier Who may run this command
+     * @param usage The correct format for this command, NOT including the
+     *     command prefix
+     * @param description A short description for `$help`
+     * @param minArgs The fewest arguments this command accepts
+     * @param maxArgs The most arguments this command accepts, or UNLIMITED
+     * @param handler The function that runs this command
+     * @param aliases Other names that can be used to call this command
+     */
+    public Command(String name, Tier tier, String usage, String description, int minArgs, int maxArgs,
+                   CommandHandler handler, String... aliases) {
+        this.name = name;
+        this.aliases = List.of(aliases);
+        this.tier = tier;
+        this.usage = usage;
+        this.description = description;
+        this.minArgs = minArgs;
+        this.maxArgs = maxArgs;
+        this.handler = handler;
+        this.latency = Metrics.commandLatency(name);
+    }
+
+    /**
+     * Check if this command can be called with the given number of arguments.
+     *
+     * @param count The number of arguments
+     *
+     * @return True if the number of arguments is valid
+     */
+    public boolean acceptsArgs(int count) {
+        return count >= minArgs && count <= maxArgs;
+    }
+
+    /**
+     * Get the name used to call this command.
+     *
+     * @return This command's name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the other names that can be used to call this command.
+     *
+     * @return This command's aliases
+     */
+    public List<String> getAliases() {
+        return aliases;
+    }
+
+    /**
+     * Get who may run this command.
+     *
+     * @return This command's permission tier
+     */
+    public Tier getTier() {
+        return tier;
+    }
+
+    /**
+     * Get the correct format for this command, without the prefix.
+     *
+     * @return This command's usage
+     */
+    public String getUsage() {
+        return usage;
+    }
+
+    /**
+     * Get the description shown in `$help`.
+     *
+     * @return This command's description
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Get the function that runs this command.
+     *
+     * @return This command's handler
+     */
+    public CommandHandler getHandler() {
+        return handler;
+    }
+
+    /**
+     * Get the histogram this command's latency is recorded to.
+     *
+     * @return This command's latency histogram
+     */
+    public Histogram getLatency() {
+        return latency;
+    }
+}
@@ -0,0 +1,172 @@
+package listeners;
+
+import java.util.Arrays;
+
+/**
+ * A tokenized command message. The content is scanned once and only the start
+ * and end offsets of each token are recorded; arguments are sliced out of the
+ * original string when a handler asks for them.
+ */
+public class CommandArgs {
+    private final String content;
+    private final String name;
+
+    /**
+     * Start and end offsets of each argument, interleaved
+     */
+    private final int[] bounds;
+    private final int size;
+
+    /**
+     * The same command tokenized from the message's raw content, or null if
+     * it is not needed yet
+     */
+    private CommandArgs raw;
+    private String rawContent;
+    private String prefix;
+
+    private CommandArgs(String content, String name, int[] bounds, int size) {
+        this.content = content;
+        this.name = name;
+        this.bounds = bounds;
+        this.size = size;
+    }
+
+    /**
+     * Tokenize a message if it is a command, keeping its raw content for
+     * handlers that need mentions as `<@id>` tokens. Displayed content turns
+     * mentions into `@name`, and names may contain spaces.
+     *
+     * @param content The message's displayed content
+     * @param rawContent The message's raw content
+     * @param prefix The command prefix
+     *
+     * @return The tokenized command, or null if the message is not a command
+     */
+    public static CommandArgs parse(String content, String rawContent, String prefix) {
+        CommandArgs args = parse(content, prefix);
+        if (args != null) {
+            args.rawContent = rawContent;
+            args.prefix = prefix;
+        }
+        return args;
+    }
+
+    /**
+     * Tokenize a message if it is a command.
+     *
+     * @param content The message content
+     * @param prefix The command prefix
+     *
+     * @return The tokenized command, or null if the message is not a command
+     */
+    public static CommandArgs parse(String content, String prefix) {
+        if (!content.startsWith(prefix)) return null;
+
+        int length = content.length();
+        int nameEnd = prefix.length();
+        while (nameEnd < length && !Character.isWhitespace(content.charAt(nameEnd))) nameEnd++;
+        String name = content.substring(prefix.length(), nameEnd);
+
+        int[] bounds = new int[8];
+        int size = 0;
+        int i = nameEnd;
+        while (i < length) {
+            // skip whitespace between arguments
+            while (i < length && Character.isWhitespace(content.charAt(i))) i++;
+            if (i == length) break;
+
+            int start = i;
+            while (i < length && !Character.isWhitespace(content.charAt(i))) i++;
+
+            if (size * 2 == bounds.length) bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            bounds[size * 2] = start;
+            bounds[size * 2 + 1] = i;
+            size++;
+        }
+
+        return new CommandArgs(content, name, bounds, size);
+    }
+
+    /**
+     * Get the command tokenized from the message's raw content, where every
+     * mention is a single `<@id>` or `<@!id>` token. The raw content is only
+     * tokenized if a handler asks for it.
+     *
+     * @return The raw arguments, or these arguments if no raw content was
+     *     given
+     */
+    public CommandArgs raw() {
+        if (raw == null) {
+            CommandArgs parsed = rawContent == null ? null : parse(rawContent, prefix);
+            raw = parsed != null ? parsed : this;
+        }
+        return raw;
+    }
+
+    /**
+     * Read the member ID from a raw mention token.
+     *
+     * @param token A raw argument
+     *
+     * @return The mentioned member's ID, or -1 if the token is not a member
+     *     mention
+     */
+    public static long parseMention(String token) {
+        if (!token.startsWith("<@") || !token.endsWith(">")) return -1;
+
+        int start = token.startsWith("<@!") ? 3 : 2;
+        if (start >= token.length() - 1) return -1;
+        for (int i = start; i < token.length() - 1; i++) {
+            if (!Character.isDigit(token.charAt(i))) return -1;
+        }
+        try {
+            return Long.parseLong(token.substring(start, token.length() - 1));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Get the command name, without the prefix.
+     *
+     * @return The command name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get the number of arguments after the command name.
+     *
+     * @return The number of arguments
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get a single argument.
+     *
+     * @param index The index of the argument
+     *
+     * @return The argument
+     */
+    public String get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+        return content.substring(bounds[index * 2], bounds[index * 2 + 1]);
+    }
+
+    /**
+     * Get an argument and everything after it, e.g. a free-form message.
+     * Whitespace inside the text is kept as it was typed.
+     *
+     * @param index The index of the first argument to include
+     *
+     * @return The remaining text
+     */
+    public String rest(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+        return content.substring(bounds[index * 2], bounds[size * 2 - 1]);
+    }
+}
@@ -0,0 +1,22 @@
+package listeners;
+
+import entities.Server;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.TextChannel;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A function that handles a single command.
+ */
+public interface CommandHandler {
+    /**
+     * Handle a single command.
+     *
+     * @param member The member that called the command
+     * @param channel The channel that the command was called in
+     * @param server The Server that the command was called in
+     * @param args Extra command arguments, if any
+     * @param mentions The members mentioned in the command
+     */
+    void handle(@NotNull Member member, TextChannel channel, Server server, CommandArgs args, Member[] mentions);
+}
@@ -0,0 +1,63 @@
+package listeners;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The set of commands the bot understands, with a lookup table from every
+ * name and alias to its command.
+ */
+public class CommandRegistry {
+    /**
+     * Map from command names and aliases to Commands
+     */
+    private final HashMap<String, Command> lookup = new HashMap<>();
+
+    /**
+     * Commands in the order they were registered, for `$help`
+     */
+    private final List<Command> commands = new ArrayList<>();
+
+    /**
+     * Register a command under its name and aliases.
+     *
+     * @param command The Command to register
+     *
+     * @throws IllegalArgumentException If a name or alias is already taken
+     */
+    public void register(Command command) {
+        claim(command.getName(), command);
+        for (String alias : command.getAliases()) {
+            claim(alias, command);
+        }
+        commands.add(command);
+    }
+
+    /**
+     * Find the command for a name or alias.
+     *
+     * @param name The name that was typed, without the prefix
+     *
+     * @return The Command, or null if there is no such command
+     */
+    public Command find(String name) {
+        return lookup.get(name);
+    }
+
+    /**
+     * Get every registered command.
+     *
+     * @return The Commands in registration order
+     */
+    public List<Command> getCommands() {
+        return Collections.unmodifiableList(commands);
+    }
+
+    private void claim(String name, Command command) {
+        if (lookup.putIfAbsent(name, command) != null) {
+            throw new IllegalArgumentException("Command name already registered: " + name);
+        }
+    }
+}
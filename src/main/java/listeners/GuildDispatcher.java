@@ -0,0 +1,188 @@
+package listeners;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs tasks in a per-guild mailbox on a small shared thread pool. Tasks for
+ * the same guild run one at a time in the order they were submitted, while
+ * tasks for different guilds run in parallel.
+ */
+public class GuildDispatcher {
+    /**
+     * Maximum number of tasks a mailbox runs before giving its thread back to
+     * the pool, so a busy guild cannot starve the others.
+     */
+    private static final int BATCH_SIZE = 16;
+
+    /**
+     * Waits longer than this are logged.
+     */
+    private static final long SLOW_WAIT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * A task along with the time it was submitted.
+     */
+    private static class Task {
+        private final Runnable runnable;
+        private final long submittedAt = System.nanoTime();
+
+        private Task(Runnable runnable) {
+            this.runnable = runnable;
+        }
+    }
+
+    /**
+     * An ordered queue of tasks for a single guild. At most one thread runs a
+     * mailbox at any time.
+     */
+    private class Mailbox implements Runnable {
+        private final long guildId;
+        private final ConcurrentLinkedQueue<Task> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger depth = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private Mailbox(long guildId) {
+            this.guildId = guildId;
+        }
+
+        private void enqueue(Task task) {
+            tasks.add(task);
+            depth.incrementAndGet();
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (int i = 0; i < BATCH_SIZE; i++) {
+                    Task task = tasks.poll();
+                    if (task == null) break;
+                    depth.decrementAndGet();
+                    recordWait(guildId, System.nanoTime() - task.submittedAt);
+
+                    try {
+                        task.runnable.run();
+                    } catch (RuntimeException ex) {
+                        ex.printStackTrace();
+                    }
+                }
+            } finally {
+                scheduled.set(false);
+                // tasks may have arrived after the last poll
+                if (!tasks.isEmpty()) schedule();
+            }
+        }
+    }
+
+    private final ExecutorService executor;
+
+    /**
+     * Map from guild IDs to their mailboxes
+     */
+    private final ConcurrentHashMap<Long, Mailbox> mailboxes = new ConcurrentHashMap<>();
+
+    private final LongAdder dispatchedTasks = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * Constructs a new GuildDispatcher.
+     *
+     * @param threads The number of worker threads shared by all guilds
+     */
+    public GuildDispatcher(int threads) {
+        AtomicInteger threadNumber = new AtomicInteger(1);
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "mentorbot-dispatch-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Add a task to the end of a guild's mailbox.
+     *
+     * @param guildId The ID of the guild the task belongs to
+     * @param task The task to run
+     */
+    public void dispatch(long guildId, Runnable task) {
+        mailboxes.computeIfAbsent(guildId, Mailbox::new).enqueue(new Task(task));
+    }
+
+    /**
+     * Get the number of tasks waiting in a guild's mailbox.
+     *
+     * @param guildId The ID of the guild to check
+     *
+     * @return The number of waiting tasks
+     */
+    public int getMailboxDepth(long guildId) {
+        Mailbox mailbox = mailboxes.get(guildId);
+        return mailbox == null ? 0 : mailbox.depth.get();
+    }
+
+    /**
+     * Get the number of tasks waiting across all guilds.
+     *
+     * @return The total number of waiting tasks
+     */
+    public int getTotalDepth() {
+        int total = 0;
+        for (Mailbox mailbox : mailboxes.values()) {
+            total += mailbox.depth.get();
+        }
+        return total;
+    }
+
+    /**
+     * Get the number of tasks that have been started so far.
+     *
+     * @return The number of dispatched tasks
+     */
+    public long getDispatchedTasks() {
+        return dispatchedTasks.sum();
+    }
+
+    /**
+     * Get the total time tasks have spent waiting in their mailboxes.
+     *
+     * @return The total wait time in nanoseconds
+     */
+    public long getTotalWaitNanos() {
+        return totalWaitNanos.sum();
+    }
+
+    /**
+     * Get the longest time any task has spent waiting in its mailbox.
+     *
+     * @return The longest wait time in nanoseconds
+     */
+    public long getMaxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    private void recordWait(long guildId, long waitNanos) {
+        dispatchedTasks.increment();
+        totalWaitNanos.add(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+
+        if (waitNanos > SLOW_WAIT_NANOS) {
+            System.out.printf("Command for guild %d waited %d ms in its mailbox (%d still queued)%n",
+                guildId, TimeUnit.NANOSECONDS.toMillis(waitNanos), getMailboxDepth(guildId));
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package listeners;
 
+import entities.PermissionIndex;
 import entities.QueueMember;
 import entities.Room;
 import entities.Server;
@@ -7,81 +8,160 @@ import entities.Topic;
 import info.BotResponses;
 import info.Config;
 import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.OnlineStatus;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.Activity;
+import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.MessageEmbed;
 import net.dv8tion.jda.api.entities.TextChannel;
 import net.dv8tion.jda.api.events.ReadyEvent;
+import net.dv8tion.jda.api.events.guild.GuildJoinEvent;
+import net.dv8tion.jda.api.events.guild.GuildReadyEvent;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberRemoveEvent;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberRoleAddEvent;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberRoleRemoveEvent;
+import net.dv8tion.jda.api.events.guild.voice.GuildVoiceJoinEvent;
+import net.dv8tion.jda.api.events.guild.voice.GuildVoiceLeaveEvent;
+import net.dv8tion.jda.api.events.guild.voice.GuildVoiceMoveEvent;
 import net.dv8tion.jda.api.events.message.guild.GuildMessageReceivedEvent;
+import net.dv8tion.jda.api.events.message.guild.react.GuildMessageReactionAddEvent;
+import net.dv8tion.jda.api.events.role.RoleCreateEvent;
+import net.dv8tion.jda.api.events.role.RoleDeleteEvent;
+import net.dv8tion.jda.api.events.role.update.RoleUpdateNameEvent;
+import net.dv8tion.jda.api.events.role.update.RoleUpdatePermissionsEvent;
+import net.dv8tion.jda.api.events.user.update.UserUpdateOnlineStatusEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import metrics.Metrics;
 import org.jetbrains.annotations.NotNull;
 
+import java.lang.management.ManagementFactory;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class MainEventListener extends ListenerAdapter {
     /**
-     * A function that handles a single command.
+     * Map from a guild ID to a Server object. Events may be dispatched from
+     * several threads, so the map must be concurrent.
      */
-    private interface CommandHandler {
-        /**
-         * Handle a single command.
-         *
-         * @param member The member that called the command
-         * @param channel The channel that the command was called in
-         * @param server The Server that the command was called in
-         * @param args Extra command arguments, if any
-         */
-        void handle(@NotNull Member member, TextChannel channel, Server server, String[] args, Member[] mentions);
-    }
+    private final ConcurrentHashMap<String, Server> servers = new ConcurrentHashMap<>();
 
     /**
-     * Map from a server name to a Server object.
+     * Runs commands in per-guild mailboxes, or null to run them inline on
+     * JDA's event thread.
      */
-    private final HashMap<String, Server> servers = new HashMap<>();
+    private final GuildDispatcher dispatcher;
 
     /**
-     * Check if the given Member has administrator permissions or an
-     * administrator role.
-     *
-     * @param member The Member to check
-     *
-     * @return True if the Member is an admin, false otherwise
+     * A member mention in a message's raw content
+     */
+    private static final Pattern MEMBER_MENTION = Pattern.compile("<@!?(\\d+)>");
+
+    /**
+     * Every command the bot understands
+     */
+    private final CommandRegistry commands = new CommandRegistry();
+
+    /**
+     * Paginated listings that can still be navigated
+     */
+    private final PageCache pages = new PageCache();
+
+    /**
+     * The help embed for each tier. Commands do not change after startup, so
+     * these are built once.
+     */
+    private final EnumMap<Command.Tier, MessageEmbed> helpEmbeds = new EnumMap<>(Command.Tier.class);
+
+    /**
+     * Map from a guild ID to its topic listing, which caches its pages
      */
-    private static boolean isAdmin(Member member) {
-        boolean hasAdminPermission = member.hasPermission(Permission.ADMINISTRATOR);
-        boolean hasAdminRole = member.getRoles().stream()
-            .anyMatch(r -> Config.ADMIN_ROLES.contains(r.getName()));
+    private final ConcurrentHashMap<String, TopicPages> topicListings = new ConcurrentHashMap<>();
 
-        return hasAdminPermission || hasAdminRole;
+    /**
+     * Constructs a MainEventListener using the dispatch mode from Config.
+     */
+    public MainEventListener() {
+        this.dispatcher = Config.DISPATCH_MODE.equals("guild")
+            ? new GuildDispatcher(Config.DISPATCH_THREADS)
+            : null;
+
+        commands.register(new Command("help", Command.Tier.EVERYONE, "help",
+            "Show this list of commands.", 0, Command.UNLIMITED, this::help));
+        commands.register(new Command("queue", Command.Tier.EVERYONE, "queue <topic> <message>",
+            "Add yourself to a queue with a message for the mentor.", 2, Command.UNLIMITED, this::queue, "join"));
+        commands.register(new Command("leave", Command.Tier.EVERYONE, "leave <topic>",
+            "Remove yourself from a queue.", 1, 1, this::leave));
+        commands.register(new Command("showqueue", Command.Tier.EVERYONE, "showqueue <topic> [page]",
+            "Show the people currently in queue.", 1, 2, this::showQueue));
+        commands.register(new Command("position", Command.Tier.EVERYONE, "position <topic>",
+            "Show your position in a queue.", 1, 1, this::position));
+        commands.register(new Command("eta", Command.Tier.EVERYONE, "eta <topic>",
+            "Estimate how long you will wait in a queue.", 1, 1, this::eta));
+        commands.register(new Command("showtopics", Command.Tier.EVERYONE, "showtopics [page]",
+            "List all topics.", 0, 1, this::showTopics, "topics"));
+        commands.register(new Command("ready", Command.Tier.MENTOR, "ready [topic]",
+            "Retrieve the next person from the queue, or without a topic, whoever has waited longest in any of "
+                + "your topics.", 0, 1, this::ready));
+        commands.register(new Command("kick", Command.Tier.MENTOR, "kick <@user> [@user...] <topic> <reason>",
+            "Kick the specified users from the queue.", 3, Command.UNLIMITED, this::kick));
+        commands.register(new Command("move", Command.Tier.MENTOR, "move <@user> <from topic> <to topic>",
+            "Move a user to another queue, keeping the time they joined.", 3, Command.UNLIMITED, this::move));
+        commands.register(new Command("clear", Command.Tier.MENTOR, "clear <topic>",
+            "Clear the specified queue.", 1, 1, this::clear));
+        commands.register(new Command("finish", Command.Tier.MENTOR, "finish",
+            "Finish a mentoring session. Must be run inside the text channel for that session.", 0, 0, this::finish));
+        commands.register(new Command("maketopic", Command.Tier.ADMIN, "maketopic <name>",
+            "Create a new topic.", 1, 1, this::makeTopic));
+        commands.register(new Command("deletetopic", Command.Tier.ADMIN, "deletetopic <name>",
+            "Delete a topic.", 1, 1, this::deleteTopic));
+
+        for (Command.Tier tier : Command.Tier.values()) {
+            helpEmbeds.put(tier, buildHelp(tier));
+        }
     }
 
     /**
-     * Check if the given Member is a mentor for a topic.
+     * Get the Servers for every guild the bot is connected to.
      *
-     * @param member The Member to check
-     * @param topic The Topic to check
+     * @return The known Servers
+     */
+    public Collection<Server> getServers() {
+        return servers.values();
+    }
+
+    /**
+     * Get the dispatcher that runs commands for each guild.
      *
-     * @return True if the Member has permission, false otherwise
+     * @return The dispatcher, if commands are not run inline
      */
-    private static boolean isMentor(Member member, Topic topic) {
-        return member.getRoles()
-                .stream()
-                .anyMatch(r -> r.getName().equals(topic.getRoleName()));
+    public Optional<GuildDispatcher> getDispatcher() {
+        return Optional.ofNullable(dispatcher);
     }
 
     /**
-     * Check if the given Member is a mentor for any topic.
+     * Decides which members JDA keeps in its member cache when members are
+     * loaded lazily. Mentors and admins are needed for every command they run,
+     * and queued members are shown by `$showqueue`; everyone else is fetched
+     * by ID if the bot ever needs them.
      *
-     * @param member The Member to check
+     * @param member The Member JDA is about to cache
      *
-     * @return True if the Member is a mentor, false otherwise
+     * @return True if the Member should be cached
      */
-    private static boolean isMentor(Member member) {
-        return member.getRoles()
-                .stream()
-                .anyMatch(r -> r.getName().startsWith(Topic.PREFIX));
+    public boolean shouldCacheMember(Member member) {
+        Server server = servers.get(member.getGuild().getId());
+        if (server == null) {
+            // the guild is still loading, so only mentors and admins matter
+            return member.hasPermission(Permission.ADMINISTRATOR) || member.getRoles().stream()
+                .anyMatch(r -> Config.ADMIN_ROLES.contains(r.getName()) || r.getName().startsWith(Topic.PREFIX));
+        }
+
+        PermissionIndex permissions = server.getPermissions();
+        return permissions.isMentor(member) || permissions.isAdmin(member) || server.isQueued(member.getIdLong());
     }
 
     /**
@@ -104,126 +184,310 @@ public class MainEventListener extends ListenerAdapter {
 
     @Override
     public void onReady(@NotNull ReadyEvent event) {
-        System.out.println("Logged in");
+        // report startup cost so the member cache modes can be compared; heap use includes uncollected garbage
+        Runtime runtime = Runtime.getRuntime();
+        System.out.printf("Logged in (member cache \"%s\", %d ms, %d MB heap)%n",
+            Config.MEMBER_CACHE_MODE,
+            ManagementFactory.getRuntimeMXBean().getUptime(),
+            (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024));
+
         event.getJDA().getPresence().setPresence(Activity.playing("$help"), false);
     }
 
+    @Override
+    public void onGuildReady(@NotNull GuildReadyEvent event) {
+        // replay the journal now, so queues and rooms are tracked before anyone runs a command
+        getServer(event.getGuild());
+    }
+
+    @Override
+    public void onGuildJoin(@NotNull GuildJoinEvent event) {
+        getServer(event.getGuild());
+    }
+
+    @Override
+    public void onGuildMemberRoleAdd(@NotNull GuildMemberRoleAddEvent event) {
+        withServer(event.getGuild(), server -> server.getPermissions().invalidateMember(event.getMember().getIdLong()));
+    }
+
+    @Override
+    public void onGuildMemberRoleRemove(@NotNull GuildMemberRoleRemoveEvent event) {
+        withServer(event.getGuild(), server -> server.getPermissions().invalidateMember(event.getMember().getIdLong()));
+    }
+
+    @Override
+    public void onGuildMemberRemove(@NotNull GuildMemberRemoveEvent event) {
+        long memberId = event.getUser().getIdLong();
+        withServer(event.getGuild(), server -> {
+            server.getPermissions().invalidateMember(memberId);
+
+            // nobody can be mentored once they left, so do not let a mentor $ready them
+            server.evictFromQueues(memberId, Metrics.Eviction.LEFT_GUILD);
+        });
+    }
+
+    @Override
+    public void onUserUpdateOnlineStatus(@NotNull UserUpdateOnlineStatusEvent event) {
+        if (Config.QUEUE_OFFLINE_GRACE_MINUTES == 0) return;
+
+        long memberId = event.getMember().getIdLong();
+        withServer(event.getGuild(), server -> {
+            if (event.getNewOnlineStatus() == OnlineStatus.OFFLINE) {
+                server.memberWentOffline(memberId, Config.QUEUE_OFFLINE_GRACE_MINUTES);
+            } else {
+                server.memberCameOnline(memberId);
+            }
+        });
+    }
+
+    @Override
+    public void onGuildVoiceJoin(@NotNull GuildVoiceJoinEvent event) {
+        withServer(event.getGuild(), server ->
+            server.getRoomByChannel(event.getChannelJoined().getIdLong()).ifPresent(Room::voiceJoined));
+    }
+
+    @Override
+    public void onGuildVoiceLeave(@NotNull GuildVoiceLeaveEvent event) {
+        withServer(event.getGuild(), server ->
+            server.getRoomByChannel(event.getChannelLeft().getIdLong()).ifPresent(Room::voiceLeft));
+    }
+
+    @Override
+    public void onGuildVoiceMove(@NotNull GuildVoiceMoveEvent event) {
+        withServer(event.getGuild(), server -> {
+            server.getRoomByChannel(event.getChannelLeft().getIdLong()).ifPresent(Room::voiceLeft);
+            server.getRoomByChannel(event.getChannelJoined().getIdLong()).ifPresent(Room::voiceJoined);
+        });
+    }
+
+    @Override
+    public void onRoleCreate(@NotNull RoleCreateEvent event) {
+        withServer(event.getGuild(), server -> server.getPermissions().updateRole(event.getRole()));
+    }
+
+    @Override
+    public void onRoleUpdateName(@NotNull RoleUpdateNameEvent event) {
+        withServer(event.getGuild(), server -> server.getPermissions().updateRole(event.getRole()));
+    }
+
+    @Override
+    public void onRoleUpdatePermissions(@NotNull RoleUpdatePermissionsEvent event) {
+        withServer(event.getGuild(), server -> server.getPermissions().updateRole(event.getRole()));
+    }
+
+    @Override
+    public void onRoleDelete(@NotNull RoleDeleteEvent event) {
+        withServer(event.getGuild(), server -> server.getPermissions().removeRole(event.getRole().getIdLong()));
+    }
+
+    /**
+     * Get a guild's Server, setting it up if the guild has none yet. Servers
+     * are set up when a guild becomes ready; this also covers commands that
+     * arrive before then.
+     *
+     * @param guild The Guild
+     *
+     * @return The guild's Server
+     */
+    private Server getServer(Guild guild) {
+        return servers.computeIfAbsent(guild.getId(), k -> new Server(guild));
+    }
+
+    /**
+     * Run an action against a guild's Server, if one has been set up. Guilds
+     * without a Server have no cached state to update.
+     *
+     * @param guild The Guild the event happened in
+     * @param action The action to run
+     */
+    private void withServer(Guild guild, Consumer<Server> action) {
+        Server server = servers.get(guild.getId());
+        if (server != null) action.accept(server);
+    }
+
     @Override
     public void onGuildMessageReceived(@NotNull GuildMessageReceivedEvent event) {
-        String[] tokens = event.getMessage().getContentDisplay().split(" ");
-        if (!tokens[0].startsWith(Config.COMMAND_PREFIX)) return;
-        String[] args = Arrays.copyOfRange(tokens, 1, tokens.length);
+        // any message in a room keeps it from being closed as idle
+        withServer(event.getGuild(), server -> {
+            Optional<Room> room = server.getRoomByChannel(event.getChannel().getIdLong());
+            if (room.isEmpty()) return;
+
+            // the bot's own warnings do not count
+            Member author = event.getMember();
+            if (author != null && author.getIdLong() != event.getGuild().getSelfMember().getIdLong()) {
+                room.get().recordActivity();
+            }
+        });
+
+        // ignore regular chatter before handing anything off
+        if (!event.getMessage().getContentRaw().startsWith(Config.COMMAND_PREFIX)) return;
+
+        long receivedAt = System.nanoTime();
+        if (dispatcher == null) {
+            handleCommand(event, receivedAt);
+        } else {
+            dispatcher.dispatch(event.getGuild().getIdLong(), () -> handleCommand(event, receivedAt));
+        }
+    }
+
+    @Override
+    public void onGuildMessageReactionAdd(@NotNull GuildMessageReactionAddEvent event) {
+        if (event.getUser().isBot() || !event.getReactionEmote().isEmoji()) return;
+
+        Runnable turn = () -> pages.turn(event.getChannel(), event.getMessageIdLong(),
+            event.getReactionEmote().getEmoji(), event.getUser());
+        if (dispatcher == null) {
+            turn.run();
+        } else {
+            dispatcher.dispatch(event.getGuild().getIdLong(), turn);
+        }
+    }
+
+    /**
+     * Parse a command message and run its handler. The command's latency is
+     * recorded from when the message was received, so time spent waiting in
+     * the guild's mailbox is included.
+     *
+     * @param event The event for the command message
+     * @param receivedAt When the message was received, from System.nanoTime()
+     */
+    private void handleCommand(GuildMessageReceivedEvent event, long receivedAt) {
+        CommandArgs args = CommandArgs.parse(event.getMessage().getContentDisplay(),
+            event.getMessage().getContentRaw(), Config.COMMAND_PREFIX);
+        if (args == null) return;
 
         Member member = Objects.requireNonNull(event.getMember());
         TextChannel channel = event.getChannel();
         Member[] mentions = event.getMessage().getMentionedMembers().toArray(new Member[0]);
 
-        String guildID = event.getGuild().getId();
-        Server server = servers.computeIfAbsent(guildID, k -> new Server(event.getGuild()));
-
-        // pick the correct method to call
-        CommandHandler commandHandler;
-        switch (tokens[0].substring(1)) {
-            case "help"        -> commandHandler = this::help;
-            case "maketopic"   -> commandHandler = this::makeTopic;
-            case "deletetopic" -> commandHandler = this::deleteTopic;
-            case "showtopics"  -> commandHandler = this::showTopics;
-            case "queue"       -> commandHandler = this::queue;
-            case "leave"       -> commandHandler = this::leave;
-            case "ready"       -> commandHandler = this::ready;
-            case "showqueue"   -> commandHandler = this::showQueue;
-            case "kick"        -> commandHandler = this::kick;
-            case "clear"       -> commandHandler = this::clear;
-            case "finish"      -> commandHandler = this::finish;
-            default            -> commandHandler = this::unknownCommand;
-        }
-        commandHandler.handle(member, channel, server, args, mentions);
-    }
-
-    private void help(Member member, TextChannel channel, Server server, String[] args, Member[] mentions) {
-        EmbedBuilder embedBuilder = new EmbedBuilder();
-        embedBuilder.setTitle("Help!");
-        embedBuilder.setDescription("Possible commands:");
-        embedBuilder.setColor(0xE57D25);
-
-        embedBuilder.addField("$queue <topic> <message>", "Add yourself to a queue with a message for the mentor.", false);
-        embedBuilder.addField("$leave <topic>", "Remove yourself from a queue.", false);
-        embedBuilder.addField("$showqueue <topic>", "Show the people currently in queue.", false);
-        embedBuilder.addField("$showtopics", "List all topics.", false);
+        Server server = getServer(event.getGuild());
 
-        if (isMentor(member) || isAdmin(member)) {
-            embedBuilder.addField("$ready <topic> (mentor only)", "Retrieve the next person from the queue.", false);
-            embedBuilder.addField("$kick <@user> <topic> <reason>", "Kick the specified user from the queue.", false);
-            embedBuilder.addField("$clear <topic> (mentor only)", "Clear the specified queue.", false);
-            embedBuilder.addField("$finish (mentor only)", "Finish a mentoring session. Must be run inside the text channel for that session.", false);
+        // pick the correct command to run
+        Command command = commands.find(args.getName());
+        if (command == null) {
+            Metrics.unknownCommand();
+            BotResponses.noSuchCommand(channel, member);
+            return;
         }
 
-        if (isAdmin(member)) {
-            embedBuilder.addField("$maketopic <name> (admin only)", "Create a new topic.", false);
-            embedBuilder.addField("$deletetopic <name> (admin only)", "Delete a topic.", false);
+        try {
+            runCommand(command, member, channel, server, args, mentions);
+        } finally {
+            command.getLatency().observeSince(receivedAt);
         }
-
-        channel.sendMessage(embedBuilder.build()).queue();
     }
 
-    private void makeTopic(Member member, TextChannel channel, Server server, String[] args, Member[] mentions) {
-        if (args.length != 1) {
-            BotResponses.invalidParameters(channel, member, "maketopic <topic>");
+    /**
+     * Check a command's arguments and permissions, then run its handler.
+     *
+     * @param command The command to run
+     * @param member The member who ran the command
+     * @param channel The text channel the command was sent in
+     * @param server The Server the command was sent in
+     * @param args The command's arguments
+     * @param mentions The members mentioned in the command message
+     */
+    private void runCommand(Command command, Member member, TextChannel channel, Server server, CommandArgs args,
+                            Member[] mentions) {
+        if (!command.acceptsArgs(args.size())) {
+            BotResponses.invalidParameters(channel, member, command.getUsage());
             return;
         }
 
-        // do not allow non-admins to run command
-        if (!isAdmin(member)) {
+        // do not allow non-admins to run admin commands
+        if (command.getTier() == Command.Tier.ADMIN && !server.getPermissions().isAdmin(member)) {
             BotResponses.noAdminPermission(channel, member);
             return;
         }
 
-        String topicName = args[0];
-        server.createTopic(topicName);
-
-        BotResponses.topicCreated(channel, member, topicName);
+        command.getHandler().handle(member, channel, server, args, mentions);
     }
 
-    private void deleteTopic(Member member, TextChannel channel, Server server, String[] args, Member[] mentions) {
-        if (args.length != 1) {
-            BotResponses.invalidParameters(channel, member, "deletetopic <topic>");
-            return;
+    private void help(Member member, TextChannel channel, Server server, CommandArgs args, Member[] mentions) {
+        Command.Tier tier = Command.Tier.EVERYONE;
+        if (server.getPermissions().isAdmin(member)) {
+            tier = Command.Tier.ADMIN;
+        } else if (server.getPermissions().isMentor(member)) {
+            tier = Command.Tier.MENTOR;
         }
 
-        // do not allow non-admins to run command
-        if (!isAdmin(member)) {
-            BotResponses.noAdminPermission(channel, member);
-            return;
+        Metrics.track(Metrics.RestCall.MESSAGE, channel.sendMessage(helpEmbeds.get(tier)).submit());
+    }
+
+    /**
+     * Build the help embed listing every command available at a tier.
+     *
+     * @param tier The highest tier the reader has
+     *
+     * @return The help embed
+     */
+    private MessageEmbed buildHelp(Command.Tier tier) {
+        EmbedBuilder embedBuilder = new EmbedBuilder();
+        embedBuilder.setTitle("Help!");
+        embedBuilder.setDescription("Possible commands:");
+        embedBuilder.setColor(0xE57D25);
+
+        for (Command command : commands.getCommands()) {
+            if (command.getTier().compareTo(tier) > 0) continue;
+
+            String suffix = switch (command.getTier()) {
+                case EVERYONE -> "";
+                case MENTOR -> " (mentor only)";
+                case ADMIN -> " (admin only)";
+            };
+            embedBuilder.addField(Config.COMMAND_PREFIX + command.getUsage() + suffix, command.getDescription(), false);
         }
 
-        String topicName = args[0];
+        return embedBuilder.build();
+    }
+
+    private void makeTopic(Member member, TextChannel channel, Server server, CommandArgs args, Member[] mentions) {
+        String topicName = args.get(0);
+        server.createTopic(topicName);
+
+        BotResponses.topicCreated(channel, member, topicName);
+    }
+
+    private void deleteTopic(Member member, TextChannel channel, Server server, CommandArgs args, Member[] mentions) {
+        String topicName = args.get(0);
         server.deleteTopic(topicName);
 
         BotResponses.topicDeleted(channel, member, topicName);
     }
 
-    private void showTopics(Member member, TextChannel channel, Server server, String[] args, Member[] mentions) {
-        if (args.length != 0) {
-            BotResponses.invalidParameters(channel, member, "showtopics");
+    private void showTopics(Member member, TextChannel channel, Server server, CommandArgs args, Member[] mentions) {
+        int page = parsePage(args, 0);
+        if (page < 1) {
+            BotResponses.invalidParameters(channel, member, "showtopics [page]");
             return;
         }
 
-        String topicList = Arrays.stream(server.getTopics())
-            .sorted(Comparator.comparing(t -> t.getName()))
-            .map(Topic::getName)
-            .collect(Collectors.joining("\n"));
-
-        BotResponses.sendTopicList(channel, member, topicList);
+        TopicPages listing = topicListings.computeIfAbsent(channel.getGuild().getId(), k -> new TopicPages(server));
+        pages.show(channel, listing, page);
     }
 
-    private void queue(Member member, TextChannel channel, Server server, String[] args, Member[] mentions) {
-        if (args.length < 2) {
-            BotResponses.invalidParameters(channel, member, "queue <topic> <reason>");
-            return;
+    /**
+     * Read an optional page number from a command's arguments.
+     *
+     * @param args The command's arguments
+     * @param index The index of the page number argument
+     *
+     * @return The page number, 1 if it was not given, or 0 if it is not a
+     *     valid page number
+     */
+    private static int parsePage(CommandArgs args, int index) {
+        if (args.size() <= index) return 1;
+
+        try {
+            return Math.max(0, Integer.parseInt(args.get(index)));
+        } catch (NumberFormatException ex) {
+            return 0;
         }
+    }
 
-        String topicName = args[0];
-        String message = Stream.of(args).skip(1).collect(Collectors.joining(" "));
+    private void queue(Member member, TextChannel channel, Server server, CommandArgs args, Member[] mentions) {
+        String topicName = args.get(0);
+        String message = args.rest(1);
 
         // do not run if topic does not exist
         Optional<Topic> optionalTopic = checkTopicExists(member, channel, server, topicName);
@@ -232,22 +496,17 @@ public class MainEventListener extends ListenerAdapter {
         Topic topic = optionalTopic.get();
 
         // do not run if the member is already in the queue
-        if (topic.isInQueue(member)) {
+        if (!topic.addToQueue(new QueueMember(member.getIdLong(), message))) {
             BotResponses.alreadyInQueue(channel, member, topic);
             return;
         }
 
-        topic.addToQueue(new QueueMember(member, message));
-        BotResponses.joinedQueue(channel, member, topicName);
+        int position = topic.getQueuePosition(member);
+        BotResponses.joinedQueue(channel, member, topic, position, topic.estimateWaitMillis(position));
     }
 
-    private void leave(Member member, TextChannel channel, Server server, String[] args, Member[] mentions) {
-        if (args.length != 1) {
-            BotResponses.invalidParameters(channel, member, "leave <topic>");
-            return;
-        }
-
-        String topicName = args[0];
+    private void leave(Member member, TextChannel channel, Server server, CommandArgs args, Member[] mentions) {
+        String topicName = args.get(0);
 
         // do not run if topic does not exist
         Optional<Topic> optionalTopic = checkTopicExists(member, channel, server, topicName);
@@ -256,22 +515,21 @@ public class MainEventListener extends ListenerAdapter {
         Topic topic = optionalTopic.get();
 
         // do not run if the member is not in the queue
-        if (!topic.isInQueue(member)) {
+        if (!topic.removeFromQueue(member)) {
             BotResponses.selfNotInQueue(channel, member, topic);
             return;
         }
 
-        topic.removeFromQueue(member);
         BotResponses.leftQueue(channel, member, topicName);
     }
 
-    private void ready(Member member, TextChannel channel, Server server, String[] args, Member[] mentions) {
-        if (args.length != 1) {
-            BotResponses.invalidParameters(channel, member, "ready <topic>");
+    private void ready(Member member, TextChannel channel, Server server, CommandArgs args, Member[] mentions) {
+        if (args.size() == 0) {
+            readyForAnyTopic(member, channel, server);
             return;
         }
 
-        String topicName = args[0];
+        String topicName = args.get(0);
 
         // do not run if topic does not exist
         Optional<Topic> optionalTopic = checkTopicExists(member, channel, server, topicName);
@@ -279,55 +537,145 @@ public class MainEventListener extends ListenerAdapter {
 
         // do not run if caller does not have mentor role for this topic or admin privileges
         Topic topic = optionalTopic.get();
-        if (!isMentor(member, topic) && !isAdmin(member)) {
+        if (!server.getPermissions().isMentor(member, topic) && !server.getPermissions().isAdmin(member)) {
             BotResponses.noPermission(channel, member);
             return;
         }
 
         // do not run if the topic queue is empty
-        if (topic.getMembersInQueue().length == 0) {
+        QueueMember mentee = topic.popFromQueue();
+        if (mentee == null) {
             BotResponses.queueIsEmpty(channel, member, topic);
             return;
         }
 
-        QueueMember mentee = topic.popFromQueue();
-        Room room = topic.createRoom(mentee);
-        BotResponses.mentorIsReady(channel, member, mentee.getMember(), room);
+        openRoom(member, channel, topic, mentee);
     }
 
-    private void showQueue(Member member, TextChannel channel, Server server, String[] args, Member[] mentions) {
-        if (args.length != 1) {
-            BotResponses.invalidParameters(channel, member, "showqueue <topic>");
+    /**
+     * Hand a mentor whoever has waited longest across every topic they
+     * mentor. Admins may take mentees from any topic.
+     *
+     * @param member The mentor
+     * @param channel The text channel the command was sent in
+     * @param server The Server the command was sent in
+     */
+    private void readyForAnyTopic(Member member, TextChannel channel, Server server) {
+        PermissionIndex permissions = server.getPermissions();
+        boolean admin = permissions.isAdmin(member);
+        if (!admin && !permissions.isMentor(member)) {
+            BotResponses.noPermission(channel, member);
+            return;
+        }
+
+        Optional<Map.Entry<Topic, QueueMember>> next =
+            server.popLongestWaiting(topic -> admin || permissions.isMentor(member, topic));
+        if (next.isEmpty()) {
+            BotResponses.mentoredQueuesAreEmpty(channel, member);
             return;
         }
 
-        String topicName = args[0];
+        openRoom(member, channel, next.get().getKey(), next.get().getValue());
+    }
+
+    /**
+     * Open a room for a mentee taken from a topic's queue and tell the mentor
+     * where it is. The mentee goes back to the front of the queue if the room
+     * cannot be opened.
+     *
+     * @param member The mentor
+     * @param channel The text channel the command was sent in
+     * @param topic The topic the mentee was queued for
+     * @param mentee The mentee
+     */
+    private void openRoom(Member member, TextChannel channel, Topic topic, QueueMember mentee) {
+        // provision the room in the background so the event thread is not blocked
+        topic.createRoom(mentee).whenComplete((room, error) -> {
+            if (error != null) {
+                error.printStackTrace();
+                topic.returnToQueue(mentee);
+                BotResponses.roomCreationFailed(channel, member, mentee, topic);
+                return;
+            }
+
+            // never wait on an invite; the voice channel's mention works without one
+            BotResponses.mentorIsReady(channel, member, mentee, room, room.takeVoiceChannelInvite());
+        });
+    }
+
+    private void showQueue(Member member, TextChannel channel, Server server, CommandArgs args, Member[] mentions) {
+        String topicName = args.get(0);
+
+        int page = parsePage(args, 1);
+        if (page < 1) {
+            BotResponses.invalidParameters(channel, member, "showqueue <topic> [page]");
+            return;
+        }
 
         // do not run if topic does not exist
         Optional<Topic> optionalTopic = checkTopicExists(member, channel, server, topicName);
         if (optionalTopic.isEmpty()) return;
 
         Topic topic = optionalTopic.get();
-
-        if (topic.getMembersInQueue().length == 0) {
+        if (topic.getQueueSize() == 0) {
             BotResponses.queueIsEmpty(channel, member, topic);
+            return;
+        }
+
+        pages.show(channel, new QueuePages(server, topic), page);
+    }
+
+    private void position(Member member, TextChannel channel, Server server, CommandArgs args, Member[] mentions) {
+        String topicName = args.get(0);
+
+        // do not run if topic does not exist
+        Optional<Topic> optionalTopic = checkTopicExists(member, channel, server, topicName);
+        if (optionalTopic.isEmpty()) return;
+
+        Topic topic = optionalTopic.get();
+
+        int position = topic.getQueuePosition(member);
+        if (position == 0) {
+            BotResponses.selfNotInQueue(channel, member, topic);
         } else {
-            String menteeList = Arrays.stream(topic.getMembersInQueue())
-                .map(qm -> String.format("%s: %s", qm.getMember().getEffectiveName(), qm.getMessage()))
-                .collect(Collectors.joining("\n"));
-            BotResponses.showQueueMembers(channel, member, topic, menteeList);
+            BotResponses.queuePosition(channel, member, topic, position, topic.getQueueSize());
         }
     }
 
-    private void kick(Member member, TextChannel channel, Server server, String[] args, Member[] mentions) {
-        if (args.length < 3) {
-            BotResponses.invalidParameters(channel, member, "kick <@member> <topic> <reason>");
+    private void eta(Member member, TextChannel channel, Server server, CommandArgs args, Member[] mentions) {
+        String topicName = args.get(0);
+
+        // do not run if topic does not exist
+        Optional<Topic> optionalTopic = checkTopicExists(member, channel, server, topicName);
+        if (optionalTopic.isEmpty()) return;
+
+        Topic topic = optionalTopic.get();
+
+        // members who are not queued get the estimate for joining now
+        int position = topic.getQueuePosition(member);
+        int queueSize = topic.getQueueSize();
+        long wait = topic.estimateWaitMillis(position > 0 ? position : queueSize + 1);
+        BotResponses.waitEstimate(channel, member, topic, position, queueSize, wait);
+    }
+
+    private void kick(Member member, TextChannel channel, Server server, CommandArgs args, Member[] mentions) {
+        // the mentions before the topic name the mentees; the reason may mention others
+        CommandArgs raw = args.raw();
+        LinkedHashSet<Long> menteeIds = new LinkedHashSet<>();
+        int leading = 0;
+        while (leading < raw.size()) {
+            long id = CommandArgs.parseMention(raw.get(leading));
+            if (id < 0) break;
+            menteeIds.add(id);
+            leading++;
+        }
+        if (leading == 0 || raw.size() < leading + 2) {
+            BotResponses.invalidParameters(channel, member, "kick <@user> [@user...] <topic> <reason>");
             return;
         }
 
-        Member mentee = mentions[0];  // also takes up args[0]
-        String topicName = args[1];
-        String reason = Stream.of(args).skip(2).collect(Collectors.joining(" "));
+        String topicName = raw.get(leading);
+        String reason = withDisplayedMentions(raw.rest(leading + 1), mentions);
 
         // do not run if topic does not exist
         Optional<Topic> optionalTopic = checkTopicExists(member, channel, server, topicName);
@@ -335,79 +683,147 @@ public class MainEventListener extends ListenerAdapter {
 
         // do not run if caller does not have mentor role for this topic or admin privileges
         Topic topic = optionalTopic.get();
-        if (!isMentor(member, topic) && !isAdmin(member)) {
+        if (!server.getPermissions().isMentor(member, topic) && !server.getPermissions().isAdmin(member)) {
             BotResponses.noPermission(channel, member);
             return;
         }
 
-        // do not run if mentee is not in the specified queue
-        if (!topic.isInQueue(mentee)) {
-            BotResponses.notInQueue(channel, member, mentee, topic);
+        List<Member> named = new ArrayList<>();
+        for (long menteeId : menteeIds) {
+            findMention(mentions, menteeId).ifPresent(named::add);
+        }
+        if (named.isEmpty()) {
+            BotResponses.invalidParameters(channel, member, "kick <@user> [@user...] <topic> <reason>");
             return;
         }
 
-        topic.removeFromQueue(mentee);
-        BotResponses.kickedFromQueue(channel, member, mentee, reason);
+        List<Member> kicked = topic.kickFromQueue(named);
+
+        // a single mentee who is not queued gets the usual answer
+        if (kicked.isEmpty() && named.size() == 1) {
+            BotResponses.notInQueue(channel, member, named.get(0), topic);
+            return;
+        }
+
+        List<Member> notQueued = new ArrayList<>(named);
+        notQueued.removeAll(kicked);
+        BotResponses.kickedFromQueue(channel, member, kicked, notQueued, topic, reason);
     }
 
-    private void clear(Member member, TextChannel channel, Server server, String[] args, Member[] mentions) {
-        if (args.length != 1) {
-            BotResponses.invalidParameters(channel, member, "clear <topic>");
+    private void move(Member member, TextChannel channel, Server server, CommandArgs args, Member[] mentions) {
+        // a display name with spaces spans several displayed arguments, so read the raw ones
+        CommandArgs raw = args.raw();
+        Optional<Member> optionalMentee = raw.size() == 3
+            ? findMention(mentions, CommandArgs.parseMention(raw.get(0)))
+            : Optional.empty();
+        if (optionalMentee.isEmpty()) {
+            BotResponses.invalidParameters(channel, member, "move <@user> <from topic> <to topic>");
             return;
         }
 
-        String topicName = args[0];
+        Member mentee = optionalMentee.get();
 
-        // do not run if topic does not exist
-        Optional<Topic> optionalTopic = checkTopicExists(member, channel, server, topicName);
-        if (optionalTopic.isEmpty()) return;
+        // do not run if either topic does not exist
+        Optional<Topic> optionalFrom = checkTopicExists(member, channel, server, raw.get(1));
+        if (optionalFrom.isEmpty()) return;
+        Optional<Topic> optionalTo = checkTopicExists(member, channel, server, raw.get(2));
+        if (optionalTo.isEmpty()) return;
 
-        // do not run if caller does not have mentor role for this topic or admin privileges
-        Topic topic = optionalTopic.get();
-        if (!isMentor(member, topic) && !isAdmin(member)) {
+        // do not run if caller does not mentor both topics or have admin privileges
+        Topic from = optionalFrom.get();
+        Topic to = optionalTo.get();
+        PermissionIndex permissions = server.getPermissions();
+        if (!permissions.isAdmin(member) && !(permissions.isMentor(member, from) && permissions.isMentor(member, to))) {
             BotResponses.noPermission(channel, member);
             return;
         }
 
-        Arrays.stream(topic.getMembersInQueue()).forEach(topic::removeFromQueue);
+        if (!from.moveToQueue(mentee.getIdLong(), to)) {
+            if (to.isInQueue(mentee)) {
+                BotResponses.alreadyInOtherQueue(channel, member, mentee, to);
+            } else {
+                BotResponses.notInQueue(channel, member, mentee, from);
+            }
+            return;
+        }
+
+        BotResponses.movedToQueue(channel, member, mentee, from, to, to.getQueuePosition(mentee));
+    }
 
-        BotResponses.queueCleared(channel, member, topic);
+    /**
+     * Find a mentioned member by ID.
+     *
+     * @param mentions The members mentioned in a command message
+     * @param memberId The ID to look for, or -1
+     *
+     * @return The Member, or an empty Optional if they were not mentioned
+     */
+    private static Optional<Member> findMention(Member[] mentions, long memberId) {
+        for (Member mention : mentions) {
+            if (mention.getIdLong() == memberId) return Optional.of(mention);
+        }
+        return Optional.empty();
     }
 
-    private void finish(Member member, TextChannel channel, Server server, String[] args, Member[] mentions) {
-        if (args.length != 0) {
-            BotResponses.invalidParameters(channel, member, "finish");
-            return;
+    /**
+     * Replace raw member mentions with `@name`, as they are displayed, so that
+     * echoing text back does not ping anyone.
+     *
+     * @param text Raw message text
+     * @param mentions The members mentioned in the message
+     *
+     * @return The text with mentions of those members replaced
+     */
+    private static String withDisplayedMentions(String text, Member[] mentions) {
+        Matcher matcher = MEMBER_MENTION.matcher(text);
+        StringBuilder result = new StringBuilder();
+        while (matcher.find()) {
+            long memberId = Long.parseLong(matcher.group(1));
+            String replacement = findMention(mentions, memberId)
+                .map(mention -> "@" + mention.getEffectiveName())
+                .orElse(matcher.group());
+            matcher.appendReplacement(result, Matcher.quoteReplacement(replacement));
         }
+        matcher.appendTail(result);
+        return result.toString();
+    }
 
-        Topic topic = null;
-        Optional<Room> optionalRoom = Optional.empty();
+    private void clear(Member member, TextChannel channel, Server server, CommandArgs args, Member[] mentions) {
+        String topicName = args.get(0);
 
-        // find the topic corresponding to this channel
-        for (Topic t : server.getTopics()) {
-            optionalRoom = t.getRoom(channel.getName());
-            if (optionalRoom.isPresent()) {
-                topic = t;
-                break;
-            }
+        // do not run if topic does not exist
+        Optional<Topic> optionalTopic = checkTopicExists(member, channel, server, topicName);
+        if (optionalTopic.isEmpty()) return;
+
+        // do not run if caller does not have mentor role for this topic or admin privileges
+        Topic topic = optionalTopic.get();
+        if (!server.getPermissions().isMentor(member, topic) && !server.getPermissions().isAdmin(member)) {
+            BotResponses.noPermission(channel, member);
+            return;
         }
 
+        int cleared = topic.clearQueue();
+
+        BotResponses.queueCleared(channel, member, topic, cleared);
+    }
+
+    private void finish(Member member, TextChannel channel, Server server, CommandArgs args, Member[] mentions) {
         // only run inside a room
+        Optional<Room> optionalRoom = server.getRoomByChannel(channel.getIdLong());
         if (optionalRoom.isEmpty()) {
             BotResponses.runInTopicChannel(channel, member);
             return;
         }
 
+        Room room = optionalRoom.get();
+        Topic topic = room.getTopic();
+
         // do not run if caller does not have mentor role for this topic or admin privileges
-        if (!isMentor(member, topic) && !isAdmin(member)) {
+        if (!server.getPermissions().isMentor(member, topic) && !server.getPermissions().isAdmin(member)) {
             BotResponses.noPermission(channel, member);
             return;
         }
 
-        topic.deleteRoom(optionalRoom.get());
-    }
-
-    private void unknownCommand(Member member, TextChannel channel, Server server, String[] args, Member[] mentions) {
-        BotResponses.noSuchCommand(channel, member);
+        topic.deleteRoom(room);
     }
 }
@@ -0,0 +1,131 @@
+package listeners;
+
+import metrics.Metrics;
+import metrics.Metrics.RestCall;
+import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.entities.User;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the paginated listings the bot has sent, so that reacting to one
+ * of them with an arrow turns its page.
+ *
+ * Listings can be navigated for PAGE_VIEW_MINUTES after they were last used,
+ * then they are forgotten and stay on their last page.
+ */
+public class PageCache {
+    public static final String PREVIOUS_PAGE = "\u25C0\uFE0F";
+    public static final String NEXT_PAGE = "\u25B6\uFE0F";
+
+    private static final long PAGE_VIEW_MINUTES = 5;
+
+    /**
+     * A listing message and the page it is showing.
+     */
+    private static class View {
+        private final PageSource source;
+        private int page;
+        private volatile long expiresAt;
+
+        private View(PageSource source, int page) {
+            this.source = source;
+            this.page = page;
+            touch();
+        }
+
+        private void touch() {
+            expiresAt = System.nanoTime() + TimeUnit.MINUTES.toNanos(PAGE_VIEW_MINUTES);
+        }
+    }
+
+    /**
+     * Map from message IDs to the listings they show
+     */
+    private final ConcurrentHashMap<Long, View> views = new ConcurrentHashMap<>();
+
+    /**
+     * Send a page of a listing. Listings with more than one page get arrow
+     * reactions for navigation.
+     *
+     * @param channel The text channel to send the listing to
+     * @param source The listing to show
+     * @param page The 1-based page to show first. Pages past the end show the
+     *     last page.
+     */
+    public void show(TextChannel channel, PageSource source, int page) {
+        expire();
+
+        int pageCount = source.getPageCount();
+        int first = Math.max(1, Math.min(page, pageCount));
+        source.render(first)
+            .thenCompose(embed -> Metrics.track(RestCall.MESSAGE, channel.sendMessage(embed).submit()))
+            .thenAccept(message -> {
+                if (pageCount <= 1) return;
+
+                views.put(message.getIdLong(), new View(source, first));
+                message.addReaction(PREVIOUS_PAGE).queue();
+                message.addReaction(NEXT_PAGE).queue();
+            })
+            .exceptionally(error -> {
+                error.printStackTrace();
+                return null;
+            });
+    }
+
+    /**
+     * Turn the page of a listing after someone reacted to it. The reaction is
+     * removed again so that it can be used once more.
+     *
+     * @param channel The text channel the listing is in
+     * @param messageId The ID of the message that was reacted to
+     * @param emoji The reaction's emoji
+     * @param user The user who reacted
+     *
+     * @return True if the message is a listing and the reaction was an arrow
+     */
+    public boolean turn(TextChannel channel, long messageId, String emoji, User user) {
+        expire();
+
+        View view = views.get(messageId);
+        if (view == null) return false;
+
+        int delta;
+        if (emoji.equals(PREVIOUS_PAGE)) {
+            delta = -1;
+        } else if (emoji.equals(NEXT_PAGE)) {
+            delta = 1;
+        } else {
+            return false;
+        }
+
+        channel.removeReactionById(messageId, emoji, user).queue();
+
+        int page;
+        synchronized (view) {
+            // the listing may have shrunk since it was sent
+            int pageCount = view.source.getPageCount();
+            page = Math.max(1, Math.min(view.page + delta, pageCount));
+            if (page == view.page) return true;  // already on the first or last page
+            view.page = page;
+            view.touch();
+        }
+
+        view.source.render(page)
+            .thenCompose(embed -> Metrics.track(RestCall.MESSAGE, channel.editMessageById(messageId, embed).submit()))
+            .exceptionally(error -> {
+                error.printStackTrace();
+                return null;
+            });
+        return true;
+    }
+
+    /**
+     * Forget listings that have not been used for a while.
+     */
+    private void expire() {
+        long now = System.nanoTime();
+        views.values().removeIf(view -> view.expiresAt - now < 0);
+    }
+}
@@ -0,0 +1,28 @@
+package listeners;
+
+import net.dv8tion.jda.api.entities.MessageEmbed;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A listing that is shown one embed page at a time.
+ */
+public interface PageSource {
+    /**
+     * Get the number of pages in this listing. Listings always have at least
+     * one page.
+     *
+     * @return The number of pages
+     */
+    int getPageCount();
+
+    /**
+     * Render a single page of this listing. Only the entries on that page are
+     * looked at.
+     *
+     * @param page The 1-based page number
+     *
+     * @return A future that completes with the page's embed
+     */
+    CompletableFuture<MessageEmbed> render(int page);
+}
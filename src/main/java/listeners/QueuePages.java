@@ -0,0 +1,86 @@
+package listeners;
+
+import entities.QueueMember;
+import entities.Server;
+import entities.Topic;
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The members waiting in a topic's queue, shown a page at a time. Each page
+ * reads only its own entries from the queue, so later pages are no more
+ * expensive than the first.
+ */
+public class QueuePages implements PageSource {
+    private static final int PAGE_SIZE = 10;
+
+    /**
+     * Longest queue message shown before it is cut off, so that a full page
+     * always fits into an embed
+     */
+    private static final int MAX_MESSAGE_LENGTH = 150;
+
+    private final Server server;
+    private final Topic topic;
+
+    /**
+     * Constructs a listing of a topic's queue.
+     *
+     * @param server The Server the topic belongs to, used to resolve names
+     * @param topic The Topic whose queue is listed
+     */
+    public QueuePages(Server server, Topic topic) {
+        this.server = server;
+        this.topic = topic;
+    }
+
+    @Override
+    public int getPageCount() {
+        return Math.max(1, (topic.getQueueSize() + PAGE_SIZE - 1) / PAGE_SIZE);
+    }
+
+    @Override
+    public CompletableFuture<MessageEmbed> render(int page) {
+        int offset = (page - 1) * PAGE_SIZE;
+        List<QueueMember> queuedMembers = topic.getMembersInQueue(offset, PAGE_SIZE);
+        int queueSize = topic.getQueueSize();
+        int pageCount = getPageCount();
+
+        // queue entries only hold member IDs, so resolve the names for display
+        List<CompletableFuture<String>> entries = new ArrayList<>(queuedMembers.size());
+        for (int i = 0; i < queuedMembers.size(); i++) {
+            QueueMember qm = queuedMembers.get(i);
+            int position = offset + i + 1;
+            entries.add(server.retrieveMember(qm.getMemberId())
+                .thenApply(Member::getEffectiveName)
+                .exceptionally(error -> Long.toString(qm.getMemberId()))
+                .thenApply(name -> String.format("%d. %s: %s", position, name, truncate(qm.getMessage()))));
+        }
+
+        return CompletableFuture.allOf(entries.toArray(new CompletableFuture[0])).thenApply(v -> {
+            EmbedBuilder embedBuilder = new EmbedBuilder();
+            embedBuilder.setTitle(String.format("Members in \"%s\" queue", topic.getName()));
+            embedBuilder.setColor(0xE57D25);
+
+            for (CompletableFuture<String> entry : entries) {
+                String line = entry.join();
+                if (embedBuilder.getDescriptionBuilder().length() + line.length() + 1 > MessageEmbed.TEXT_MAX_LENGTH) break;
+                embedBuilder.appendDescription(line).appendDescription("\n");
+            }
+
+            if (queuedMembers.isEmpty()) embedBuilder.setDescription("Nobody is on this page.");
+            embedBuilder.setFooter(String.format("Page %d of %d, %d waiting", page, pageCount, queueSize));
+            return embedBuilder.build();
+        });
+    }
+
+    private static String truncate(String message) {
+        if (message.length() <= MAX_MESSAGE_LENGTH) return message;
+        return message.substring(0, MAX_MESSAGE_LENGTH - 3) + "...";
+    }
+}
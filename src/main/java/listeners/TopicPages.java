@@ -0,0 +1,98 @@
+package listeners;
+
+import entities.Server;
+import entities.Topic;
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A server's topics in alphabetical order, shown a page at a time.
+ *
+ * Topics change rarely, so the sorted names and every rendered page are
+ * cached until the server's topic version changes.
+ */
+public class TopicPages implements PageSource {
+    private static final int PAGE_SIZE = 20;
+
+    /**
+     * The sorted topic names for one version of a server's topics, and the
+     * pages rendered from them so far.
+     */
+    private static class Snapshot {
+        private final int version;
+        private final String[] names;
+        private final ConcurrentHashMap<Integer, MessageEmbed> pages = new ConcurrentHashMap<>();
+
+        private Snapshot(int version, String[] names) {
+            this.version = version;
+            this.names = names;
+        }
+
+        private int getPageCount() {
+            return Math.max(1, (names.length + PAGE_SIZE - 1) / PAGE_SIZE);
+        }
+    }
+
+    private final Server server;
+    private volatile Snapshot snapshot;
+
+    /**
+     * Constructs a listing of a server's topics.
+     *
+     * @param server The Server whose topics are listed
+     */
+    public TopicPages(Server server) {
+        this.server = server;
+    }
+
+    @Override
+    public int getPageCount() {
+        return currentSnapshot().getPageCount();
+    }
+
+    @Override
+    public CompletableFuture<MessageEmbed> render(int page) {
+        Snapshot current = currentSnapshot();
+        return CompletableFuture.completedFuture(current.pages.computeIfAbsent(page, p -> render(current, p)));
+    }
+
+    /**
+     * Get the snapshot for the server's current topics, sorting the topic
+     * names again only if they changed.
+     *
+     * @return The current snapshot
+     */
+    private Snapshot currentSnapshot() {
+        // read the version first, so a topic change during the sort leaves the snapshot stale rather than wrong
+        int version = server.getTopicVersion();
+        Snapshot current = snapshot;
+        if (current != null && current.version == version) return current;
+
+        String[] names = Arrays.stream(server.getTopics())
+            .map(Topic::getName)
+            .sorted()
+            .toArray(String[]::new);
+        current = new Snapshot(version, names);
+        snapshot = current;
+        return current;
+    }
+
+    private static MessageEmbed render(Snapshot snapshot, int page) {
+        EmbedBuilder embedBuilder = new EmbedBuilder();
+        embedBuilder.setTitle("List of topics");
+        embedBuilder.setColor(0xE57D25);
+
+        int offset = (page - 1) * PAGE_SIZE;
+        for (int i = offset; i < Math.min(snapshot.names.length, offset + PAGE_SIZE); i++) {
+            embedBuilder.appendDescription(snapshot.names[i]).appendDescription("\n");
+        }
+
+        if (snapshot.names.length == 0) embedBuilder.setDescription("There are no topics yet.");
+        embedBuilder.setFooter(String.format("Page %d of %d", page, snapshot.getPageCount()));
+        return embedBuilder.build();
+    }
+}
@@ -0,0 +1,139 @@
+package metrics;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A latency histogram with fixed buckets. The buckets are allocated up front
+ * and backed by striped counters, so recording a value allocates nothing and
+ * rarely contends with other threads.
+ */
+public class Histogram {
+    /**
+     * Upper bounds of the buckets, in seconds
+     */
+    private static final double[] BOUNDS = {
+        0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+
+    private static final long[] BOUNDS_NANOS = new long[BOUNDS.length];
+
+    /**
+     * The `le` label of each bucket, including the last one
+     */
+    private static final String[] BOUND_LABELS = new String[BOUNDS.length + 1];
+
+    static {
+        for (int i = 0; i < BOUNDS.length; i++) {
+            BOUNDS_NANOS[i] = (long) (BOUNDS[i] * TimeUnit.SECONDS.toNanos(1));
+            BOUND_LABELS[i] = BigDecimal.valueOf(BOUNDS[i]).stripTrailingZeros().toPlainString();
+        }
+        BOUND_LABELS[BOUNDS.length] = "+Inf";
+    }
+
+    /**
+     * Count of values in each bucket. The last bucket holds everything above
+     * the largest bound.
+     */
+    private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+    private final LongAdder sumNanos = new LongAdder();
+
+    /**
+     * Constructs an empty histogram.
+     */
+    public Histogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record a duration.
+     *
+     * @param nanos The duration in nanoseconds
+     */
+    public void observe(long nanos) {
+        int bucket = 0;
+        while (bucket < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[bucket]) {
+            bucket++;
+        }
+        buckets[bucket].increment();
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * Record the time passed since a starting point.
+     *
+     * @param startNanos The starting point, from System.nanoTime()
+     */
+    public void observeSince(long startNanos) {
+        observe(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Get the number of recorded durations.
+     *
+     * @return The number of samples
+     */
+    public long count() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    /**
+     * Estimate a quantile the way Prometheus' histogram_quantile() does, by
+     * interpolating linearly within the bucket the quantile falls into.
+     * Quantiles in the last bucket are reported as the largest bound.
+     *
+     * @param quantile The quantile, between 0 and 1
+     *
+     * @return The estimated duration in nanoseconds, or 0 if nothing was
+     *     recorded
+     */
+    public long quantile(double quantile) {
+        long[] counts = new long[buckets.length];
+        long total = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) return 0;
+
+        double rank = quantile * total;
+        long seen = 0;
+        for (int i = 0; i < BOUNDS_NANOS.length; i++) {
+            if (seen + counts[i] >= rank && counts[i] > 0) {
+                long lower = i == 0 ? 0 : BOUNDS_NANOS[i - 1];
+                return lower + (long) ((BOUNDS_NANOS[i] - lower) * ((rank - seen) / counts[i]));
+            }
+            seen += counts[i];
+        }
+        return BOUNDS_NANOS[BOUNDS_NANOS.length - 1];
+    }
+
+    /**
+     * Write this histogram's samples in the Prometheus text format.
+     *
+     * @param out The output to append to
+     * @param name The metric name
+     * @param labels The metric's labels without braces, e.g. `command="help"`
+     */
+    void write(StringBuilder out, String name, String labels) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long count = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            count += buckets[i].sum();
+            out.append(name).append("_bucket{").append(prefix).append("le=\"").append(BOUND_LABELS[i]).append("\"} ")
+                .append(count).append('\n');
+        }
+
+        String braces = labels.isEmpty() ? "" : "{" + labels + "}";
+        out.append(name).append("_sum").append(braces).append(' ')
+            .append(sumNanos.sum() / 1e9).append('\n');
+        out.append(name).append("_count").append(braces).append(' ').append(count).append('\n');
+    }
+}
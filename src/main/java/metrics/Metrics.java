@@ -0,0 +1,158 @@
+package metrics;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and histograms collected while the bot runs. Everything a command
+ * or REST call records to is created up front, so recording allocates
+ * nothing. Gauges such as queue depths are read when the metrics are scraped.
+ */
+public class Metrics {
+    /**
+     * The kinds of Discord REST calls the bot makes.
+     */
+    public enum RestCall {
+        CHANNEL_CREATE("channel_create"),
+        PERMISSION_OVERRIDE("permission_override"),
+        INVITE("invite"),
+        MESSAGE("message");
+
+        private final String label;
+        private final Histogram latency = new Histogram();
+        private final LongAdder errors = new LongAdder();
+
+        RestCall(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * Why a mentee was dropped from a queue without being served or leaving.
+     */
+    public enum Eviction {
+        EXPIRED("expired"),
+        OFFLINE("offline"),
+        LEFT_GUILD("left_guild");
+
+        private final String label;
+        private final LongAdder count = new LongAdder();
+
+        Eviction(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * Map from command names to their latency, sorted for stable output
+     */
+    private static final Map<String, Histogram> commandLatency = new ConcurrentSkipListMap<>();
+
+    /**
+     * Number of messages that started with the command prefix but did not
+     * name a command
+     */
+    private static final LongAdder unknownCommands = new LongAdder();
+
+    /**
+     * Number of rooms closed because nobody used them
+     */
+    private static final LongAdder idleRoomsClosed = new LongAdder();
+
+    /**
+     * Get the latency histogram for a command, creating it if needed. Look
+     * this up once, when the command is registered.
+     *
+     * @param command The command's name
+     *
+     * @return The command's latency histogram
+     */
+    public static Histogram commandLatency(String command) {
+        return commandLatency.computeIfAbsent(command, name -> new Histogram());
+    }
+
+    /**
+     * Count a message that named a command that does not exist.
+     */
+    public static void unknownCommand() {
+        unknownCommands.increment();
+    }
+
+    /**
+     * Count a mentee dropped from a queue.
+     *
+     * @param eviction Why they were dropped
+     */
+    public static void evicted(Eviction eviction) {
+        eviction.count.increment();
+    }
+
+    /**
+     * Count a room closed because nobody used it.
+     */
+    public static void idleRoomClosed() {
+        idleRoomsClosed.increment();
+    }
+
+    /**
+     * Record the latency and outcome of a REST call once it completes.
+     *
+     * @param call The kind of call
+     * @param future The call's future
+     * @param <T> The call's result type
+     *
+     * @return The same future, for chaining
+     */
+    public static <T> CompletableFuture<T> track(RestCall call, CompletableFuture<T> future) {
+        long start = System.nanoTime();
+        future.whenComplete((result, error) -> {
+            call.latency.observeSince(start);
+            if (error != null) call.errors.increment();
+        });
+        return future;
+    }
+
+    /**
+     * Write the command and REST metrics in the Prometheus text format.
+     *
+     * @param out The output to append to
+     */
+    static void write(StringBuilder out) {
+        out.append("# HELP mentorbot_command_duration_seconds Time from receiving a command to its handler returning.\n");
+        out.append("# TYPE mentorbot_command_duration_seconds histogram\n");
+        for (Map.Entry<String, Histogram> entry : commandLatency.entrySet()) {
+            entry.getValue().write(out, "mentorbot_command_duration_seconds",
+                "command=\"" + MetricsServer.escape(entry.getKey()) + "\"");
+        }
+
+        out.append("# HELP mentorbot_unknown_commands_total Messages naming a command that does not exist.\n");
+        out.append("# TYPE mentorbot_unknown_commands_total counter\n");
+        out.append("mentorbot_unknown_commands_total ").append(unknownCommands.sum()).append('\n');
+
+        out.append("# HELP mentorbot_queue_evictions_total Mentees dropped from a queue without being served.\n");
+        out.append("# TYPE mentorbot_queue_evictions_total counter\n");
+        for (Eviction eviction : Eviction.values()) {
+            out.append("mentorbot_queue_evictions_total{reason=\"").append(eviction.label).append("\"} ")
+                .append(eviction.count.sum()).append('\n');
+        }
+
+        out.append("# HELP mentorbot_idle_rooms_closed_total Rooms closed because nobody used them.\n");
+        out.append("# TYPE mentorbot_idle_rooms_closed_total counter\n");
+        out.append("mentorbot_idle_rooms_closed_total ").append(idleRoomsClosed.sum()).append('\n');
+
+        out.append("# HELP mentorbot_rest_duration_seconds Latency of Discord REST calls, including rate limit waits.\n");
+        out.append("# TYPE mentorbot_rest_duration_seconds histogram\n");
+        for (RestCall call : RestCall.values()) {
+            call.latency.write(out, "mentorbot_rest_duration_seconds", "call=\"" + call.label + "\"");
+        }
+
+        out.append("# HELP mentorbot_rest_errors_total Discord REST calls that failed.\n");
+        out.append("# TYPE mentorbot_rest_errors_total counter\n");
+        for (RestCall call : RestCall.values()) {
+            out.append("mentorbot_rest_errors_total{call=\"").append(call.label).append("\"} ")
+                .append(call.errors.sum()).append('\n');
+        }
+    }
+}
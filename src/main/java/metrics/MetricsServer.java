@@ -0,0 +1,123 @@
+package metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import entities.Server;
+import entities.Topic;
+import listeners.GuildDispatcher;
+import listeners.MainEventListener;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+/**
+ * Serves the bot's metrics in the Prometheus text format at `/metrics`.
+ * The server only listens on the loopback interface.
+ */
+public class MetricsServer {
+    private final HttpServer server;
+    private final MainEventListener listener;
+
+    /**
+     * Constructs a metrics server. Call start() to begin serving.
+     *
+     * @param port The local port to listen on
+     * @param listener The event listener whose servers and dispatcher are
+     *     reported
+     *
+     * @throws IOException If the port cannot be bound
+     */
+    public MetricsServer(int port, MainEventListener listener) throws IOException {
+        this.listener = listener;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext("/metrics", this::handle);
+    }
+
+    /**
+     * Start serving metrics on a background thread.
+     */
+    public void start() {
+        server.start();
+        System.out.printf("Serving metrics at http://127.0.0.1:%d/metrics%n", server.getAddress().getPort());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] body = render().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Render every metric in the Prometheus text format.
+     *
+     * @return The metrics page
+     */
+    String render() {
+        StringBuilder out = new StringBuilder(8192);
+        Metrics.write(out);
+
+        long now = System.currentTimeMillis();
+        StringBuilder depth = new StringBuilder();
+        StringBuilder oldest = new StringBuilder();
+        StringBuilder rooms = new StringBuilder();
+        for (Server server : listener.getServers()) {
+            for (Topic topic : server.getTopics()) {
+                String labels = String.format("{guild=\"%d\",topic=\"%s\"}",
+                    server.getGuild().getIdLong(), escape(topic.getName()));
+                depth.append("mentorbot_queue_depth").append(labels).append(' ')
+                    .append(topic.getQueueSize()).append('\n');
+
+                long enqueuedAt = topic.getOldestEnqueuedAt();
+                double wait = enqueuedAt == 0 ? 0 : Math.max(0, now - enqueuedAt) / 1000.0;
+                oldest.append("mentorbot_queue_oldest_wait_seconds").append(labels).append(' ')
+                    .append(wait).append('\n');
+
+                rooms.append("mentorbot_active_rooms").append(labels).append(' ')
+                    .append(topic.getRoomCount()).append('\n');
+            }
+        }
+
+        out.append("# HELP mentorbot_queue_depth Members waiting in a topic's queue.\n");
+        out.append("# TYPE mentorbot_queue_depth gauge\n");
+        out.append(depth);
+        out.append("# HELP mentorbot_queue_oldest_wait_seconds How long the front of a topic's queue has waited.\n");
+        out.append("# TYPE mentorbot_queue_oldest_wait_seconds gauge\n");
+        out.append(oldest);
+        out.append("# HELP mentorbot_active_rooms Open mentoring rooms for a topic.\n");
+        out.append("# TYPE mentorbot_active_rooms gauge\n");
+        out.append(rooms);
+
+        Optional<GuildDispatcher> dispatcher = listener.getDispatcher();
+        if (dispatcher.isPresent()) {
+            out.append("# HELP mentorbot_dispatch_queued_tasks Commands waiting in guild mailboxes.\n");
+            out.append("# TYPE mentorbot_dispatch_queued_tasks gauge\n");
+            out.append("mentorbot_dispatch_queued_tasks ").append(dispatcher.get().getTotalDepth()).append('\n');
+            out.append("# HELP mentorbot_dispatch_tasks_total Commands taken out of guild mailboxes.\n");
+            out.append("# TYPE mentorbot_dispatch_tasks_total counter\n");
+            out.append("mentorbot_dispatch_tasks_total ").append(dispatcher.get().getDispatchedTasks()).append('\n');
+            out.append("# HELP mentorbot_dispatch_wait_seconds_total Time commands spent in guild mailboxes.\n");
+            out.append("# TYPE mentorbot_dispatch_wait_seconds_total counter\n");
+            out.append("mentorbot_dispatch_wait_seconds_total ")
+                .append(dispatcher.get().getTotalWaitNanos() / 1e9).append('\n');
+        }
+
+        return out.toString();
+    }
+
+    /**
+     * Escape a label value for the Prometheus text format.
+     *
+     * @param value The raw label value
+     *
+     * @return The escaped value
+     */
+    static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
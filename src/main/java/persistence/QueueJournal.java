@@ -0,0 +1,654 @@
+package persistence;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import info.Config;
+
+/**
+ * An append-only journal of a guild's queue and room mutations.
+ *
+ * Records are buffered in memory and written and fsynced by a single
+ * background thread every few milliseconds, so commands never wait on disk.
+ * Every so often the journal is compacted: the current state is written to a
+ * snapshot file and a fresh, empty journal generation is started. On startup
+ * the snapshot is loaded and the journal of the same generation is replayed
+ * on top of it.
+ *
+ * Files for a guild live in the journal directory as `<guild>.snapshot` and
+ * `<guild>-<generation>.journal`. Each line is one tab-separated record.
+ */
+public class QueueJournal {
+    private static final String JOIN = "JOIN";
+    private static final String RETURN = "RETURN";
+    private static final String LEAVE = "LEAVE";
+    private static final String KICK = "KICK";
+    private static final String POP = "POP";
+    private static final String CLEAR = "CLEAR";
+    private static final String MOVE = "MOVE";
+    private static final String TOPIC_DELETE = "TOPIC_DELETE";
+    private static final String ROOM_OPEN = "ROOM_OPEN";
+    private static final String ROOM_CLOSE = "ROOM_CLOSE";
+
+    private static final String GENERATION_HEADER = "# generation ";
+
+    /**
+     * Compact once a journal generation grows past this many bytes.
+     */
+    private static final long COMPACT_THRESHOLD_BYTES = 256 * 1024;
+
+    /**
+     * All journals backed by files, flushed by the shared writer thread
+     */
+    private static final Set<QueueJournal> openJournals = ConcurrentHashMap.newKeySet();
+
+    private static final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mentorbot-journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        writer.scheduleWithFixedDelay(QueueJournal::flushAll,
+            Config.JOURNAL_FLUSH_MILLIS, Config.JOURNAL_FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(QueueJournal::flushAll));
+    }
+
+    /**
+     * A member waiting in a recovered queue.
+     */
+    public static class QueuedEntry {
+        private final long memberId;
+        private final String message;
+        private final long enqueuedAt;
+
+        private QueuedEntry(long memberId, String message, long enqueuedAt) {
+            this.memberId = memberId;
+            this.message = message;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        /**
+         * Get the ID of the queued member.
+         * @return The member's ID
+         */
+        public long getMemberId() {
+            return memberId;
+        }
+
+        /**
+         * Get the member's queue message.
+         * @return The member's message
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * Get the time the member joined the queue.
+         * @return The join time, in epoch milliseconds
+         */
+        public long getEnqueuedAt() {
+            return enqueuedAt;
+        }
+    }
+
+    /**
+     * A room that was open when the journal was last written.
+     */
+    public static class RoomEntry {
+        private final String name;
+        private final long textChannelId;
+        private final long voiceChannelId;
+
+        private RoomEntry(String name, long textChannelId, long voiceChannelId) {
+            this.name = name;
+            this.textChannelId = textChannelId;
+            this.voiceChannelId = voiceChannelId;
+        }
+
+        /**
+         * Get the room's name.
+         * @return The room's name
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Get the ID of the room's text channel.
+         * @return The text channel's ID
+         */
+        public long getTextChannelId() {
+            return textChannelId;
+        }
+
+        /**
+         * Get the ID of the room's voice channel.
+         * @return The voice channel's ID
+         */
+        public long getVoiceChannelId() {
+            return voiceChannelId;
+        }
+    }
+
+    /**
+     * The journaled state of a single topic.
+     */
+    private static class TopicState {
+        private LinkedHashMap<Long, QueuedEntry> queue = new LinkedHashMap<>();
+        private final LinkedHashMap<String, RoomEntry> rooms = new LinkedHashMap<>();
+    }
+
+    private final long guildId;
+    private final Path directory;
+
+    /**
+     * Map from lowercase topic names to their journaled state. Kept up to date
+     * as records are appended so that snapshots never have to read the live
+     * Topic objects.
+     */
+    private final HashMap<String, TopicState> state = new HashMap<>();
+
+    /**
+     * Records that have not been written to disk yet. Guarded by `this`.
+     */
+    private StringBuilder pending = new StringBuilder();
+
+    /**
+     * Guards the files, so that flushes and compactions never interleave.
+     */
+    private final Object ioLock = new Object();
+    private FileChannel journalChannel;
+    private long generation;
+    private long journalBytes;
+    private long lastCompaction = System.nanoTime();
+
+    private QueueJournal(long guildId, Path directory) {
+        this.guildId = guildId;
+        this.directory = directory;
+    }
+
+    /**
+     * Open the journal for a guild and recover its state from disk. Recovery
+     * immediately compacts into a new generation, so a torn record at the end
+     * of the previous journal is never appended to.
+     *
+     * @param directory The journal directory, or null to keep the journal in
+     *     memory only
+     * @param guildId The ID of the guild this journal belongs to
+     *
+     * @return The opened journal
+     *
+     * @throws IOException If the journal files cannot be read or written
+     */
+    public static QueueJournal open(Path directory, long guildId) throws IOException {
+        QueueJournal journal = new QueueJournal(guildId, directory);
+        if (directory == null) return journal;
+
+        Files.createDirectories(directory);
+        journal.recover();
+        journal.compact();
+        openJournals.add(journal);
+        return journal;
+    }
+
+    /**
+     * Create a journal that only tracks state in memory.
+     *
+     * @param guildId The ID of the guild this journal belongs to
+     *
+     * @return The in-memory journal
+     */
+    public static QueueJournal inMemory(long guildId) {
+        return new QueueJournal(guildId, null);
+    }
+
+    /**
+     * Get the recovered queue of a topic, front first.
+     *
+     * @param topicName The name of the topic
+     *
+     * @return The queued members
+     */
+    public synchronized List<QueuedEntry> getQueue(String topicName) {
+        TopicState topic = state.get(topicName.toLowerCase());
+        return topic == null ? Collections.emptyList() : new ArrayList<>(topic.queue.values());
+    }
+
+    /**
+     * Get the recovered rooms of a topic.
+     *
+     * @param topicName The name of the topic
+     *
+     * @return The open rooms
+     */
+    public synchronized List<RoomEntry> getRooms(String topicName) {
+        TopicState topic = state.get(topicName.toLowerCase());
+        return topic == null ? Collections.emptyList() : new ArrayList<>(topic.rooms.values());
+    }
+
+    /**
+     * Get the names of all topics with journaled state.
+     *
+     * @return The lowercase topic names
+     */
+    public synchronized List<String> getTopicNames() {
+        return new ArrayList<>(state.keySet());
+    }
+
+    /**
+     * Record a member joining the back of a queue.
+     *
+     * @param topicName The name of the topic
+     * @param memberId The ID of the member
+     * @param message The member's queue message
+     * @param enqueuedAt When the member joined, in epoch milliseconds
+     */
+    public void queueJoined(String topicName, long memberId, String message, long enqueuedAt) {
+        append(JOIN, topicName, Long.toString(memberId), Long.toString(enqueuedAt), message == null ? "" : message);
+    }
+
+    /**
+     * Record a member being put back at the front of a queue.
+     *
+     * @param topicName The name of the topic
+     * @param memberId The ID of the member
+     * @param message The member's queue message
+     * @param enqueuedAt When the member originally joined, in epoch
+     *     milliseconds
+     */
+    public void queueReturned(String topicName, long memberId, String message, long enqueuedAt) {
+        append(RETURN, topicName, Long.toString(memberId), Long.toString(enqueuedAt), message == null ? "" : message);
+    }
+
+    /**
+     * Record a member leaving a queue.
+     *
+     * @param topicName The name of the topic
+     * @param memberId The ID of the member
+     */
+    public void queueLeft(String topicName, long memberId) {
+        append(LEAVE, topicName, Long.toString(memberId));
+    }
+
+    /**
+     * Record a member being kicked from a queue.
+     *
+     * @param topicName The name of the topic
+     * @param memberId The ID of the member
+     */
+    public void queueKicked(String topicName, long memberId) {
+        append(KICK, topicName, Long.toString(memberId));
+    }
+
+    /**
+     * Record a member being taken from the front of a queue by a mentor.
+     *
+     * @param topicName The name of the topic
+     * @param memberId The ID of the member
+     */
+    public void queuePopped(String topicName, long memberId) {
+        append(POP, topicName, Long.toString(memberId));
+    }
+
+    /**
+     * Record a member being moved to the back of another topic's queue. One
+     * record covers both queues, so a crash cannot leave the member in
+     * neither or both.
+     *
+     * @param fromTopicName The name of the topic the member left
+     * @param toTopicName The name of the topic the member joined
+     * @param memberId The ID of the member
+     * @param message The member's queue message
+     * @param enqueuedAt When the member originally joined, in epoch
+     *     milliseconds
+     */
+    public void queueMoved(String fromTopicName, String toTopicName, long memberId, String message, long enqueuedAt) {
+        append(MOVE, fromTopicName, Long.toString(memberId), Long.toString(enqueuedAt), message == null ? "" : message,
+            toTopicName.toLowerCase());
+    }
+
+    /**
+     * Record a queue being cleared.
+     *
+     * @param topicName The name of the topic
+     */
+    public void queueCleared(String topicName) {
+        append(CLEAR, topicName);
+    }
+
+    /**
+     * Record a topic being deleted, dropping its queue and rooms.
+     *
+     * @param topicName The name of the topic
+     */
+    public void topicDeleted(String topicName) {
+        append(TOPIC_DELETE, topicName);
+    }
+
+    /**
+     * Record a mentoring room being created.
+     *
+     * @param topicName The name of the room's topic
+     * @param roomName The name of the room
+     * @param textChannelId The ID of the room's text channel
+     * @param voiceChannelId The ID of the room's voice channel
+     */
+    public void roomOpened(String topicName, String roomName, long textChannelId, long voiceChannelId) {
+        append(ROOM_OPEN, topicName, roomName, Long.toString(textChannelId), Long.toString(voiceChannelId));
+    }
+
+    /**
+     * Record a mentoring room being finished.
+     *
+     * @param topicName The name of the room's topic
+     * @param roomName The name of the room
+     */
+    public void roomClosed(String topicName, String roomName) {
+        append(ROOM_CLOSE, topicName, roomName);
+    }
+
+    /**
+     * Apply a record to the in-memory state and buffer it for the writer
+     * thread.
+     *
+     * @param fields The record's operation followed by its arguments
+     */
+    private synchronized void append(String... fields) {
+        fields[1] = fields[1].toLowerCase();
+        apply(fields);
+        if (directory == null) return;
+
+        writeRecord(pending, fields);
+    }
+
+    /**
+     * Apply a single record to the in-memory state.
+     *
+     * @param fields The record's operation followed by its arguments
+     */
+    private void apply(String[] fields) {
+        String topicName = fields[1];
+        if (fields[0].equals(TOPIC_DELETE)) {
+            state.remove(topicName);
+            return;
+        }
+
+        TopicState topic = state.computeIfAbsent(topicName, k -> new TopicState());
+        switch (fields[0]) {
+            case JOIN -> {
+                long memberId = Long.parseLong(fields[2]);
+                topic.queue.putIfAbsent(memberId, new QueuedEntry(memberId, fields[4], Long.parseLong(fields[3])));
+            }
+            case RETURN -> {
+                long memberId = Long.parseLong(fields[2]);
+                LinkedHashMap<Long, QueuedEntry> queue = new LinkedHashMap<>();
+                queue.put(memberId, new QueuedEntry(memberId, fields[4], Long.parseLong(fields[3])));
+                topic.queue.forEach(queue::putIfAbsent);
+                topic.queue = queue;
+            }
+            case LEAVE, KICK, POP -> topic.queue.remove(Long.parseLong(fields[2]));
+            case MOVE -> {
+                long memberId = Long.parseLong(fields[2]);
+                if (topic.queue.remove(memberId) == null) return;
+
+                // moved members are placed by when they joined, like in the live queue
+                TopicState target = state.computeIfAbsent(fields[5], k -> new TopicState());
+                QueuedEntry moved = new QueuedEntry(memberId, fields[4], Long.parseLong(fields[3]));
+                if (target.queue.containsKey(memberId)) return;
+
+                // walk from the back like MemberQueue.addByEnqueuedAt, so both agree on the position
+                List<QueuedEntry> entries = new ArrayList<>(target.queue.values());
+                int position = entries.size();
+                while (position > 0 && entries.get(position - 1).getEnqueuedAt() > moved.getEnqueuedAt()) position--;
+                entries.add(position, moved);
+
+                LinkedHashMap<Long, QueuedEntry> queue = new LinkedHashMap<>();
+                for (QueuedEntry entry : entries) {
+                    queue.put(entry.getMemberId(), entry);
+                }
+                target.queue = queue;
+            }
+            case CLEAR -> topic.queue.clear();
+            case ROOM_OPEN -> topic.rooms.put(fields[2],
+                new RoomEntry(fields[2], Long.parseLong(fields[3]), Long.parseLong(fields[4])));
+            case ROOM_CLOSE -> topic.rooms.remove(fields[2]);
+            default -> throw new IllegalArgumentException("Unknown journal record " + fields[0]);
+        }
+    }
+
+    /**
+     * Load the latest snapshot and replay the journal of its generation.
+     */
+    private void recover() throws IOException {
+        long start = System.nanoTime();
+
+        Path snapshot = snapshotPath();
+        if (Files.exists(snapshot)) {
+            try (BufferedReader reader = Files.newBufferedReader(snapshot, StandardCharsets.UTF_8)) {
+                String header = reader.readLine();
+                if (header != null && header.startsWith(GENERATION_HEADER)) {
+                    generation = Long.parseLong(header.substring(GENERATION_HEADER.length()));
+                }
+                replay(reader);
+            }
+        }
+
+        Path journal = journalPath(generation);
+        if (Files.exists(journal)) {
+            try (BufferedReader reader = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+                replay(reader);
+            }
+        }
+
+        int queued = 0;
+        int rooms = 0;
+        for (TopicState topic : state.values()) {
+            queued += topic.queue.size();
+            rooms += topic.rooms.size();
+        }
+        System.out.printf("Recovered %d queued members and %d rooms for guild %d in %d ms%n",
+            queued, rooms, guildId, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Apply every complete record from a reader. A line that cannot be
+     * parsed can only be a torn write at the end of the file, so replay stops
+     * there.
+     */
+    private void replay(BufferedReader reader) throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) continue;
+
+            String[] fields = line.split("\t", -1);
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = unescape(fields[i]);
+            }
+
+            try {
+                apply(fields);
+            } catch (RuntimeException ex) {
+                System.out.printf("Stopped replaying journal for guild %d at a damaged record%n", guildId);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Write all buffered records of every open journal.
+     */
+    private static void flushAll() {
+        for (QueueJournal journal : openJournals) {
+            try {
+                journal.flush();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Write and fsync buffered records, compacting the journal if it has
+     * grown too large or the snapshot interval has passed.
+     */
+    private void flush() throws IOException {
+        synchronized (ioLock) {
+            String records;
+            synchronized (this) {
+                if (pending.length() == 0) return;
+                records = pending.toString();
+                pending = new StringBuilder();
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(records.getBytes(StandardCharsets.UTF_8));
+            journalBytes += buffer.remaining();
+            while (buffer.hasRemaining()) {
+                journalChannel.write(buffer);
+            }
+            journalChannel.force(false);
+
+            long sinceCompaction = System.nanoTime() - lastCompaction;
+            if (journalBytes > COMPACT_THRESHOLD_BYTES
+                || sinceCompaction > TimeUnit.SECONDS.toNanos(Config.JOURNAL_SNAPSHOT_SECONDS)) {
+                compact();
+            }
+        }
+    }
+
+    /**
+     * Write the current state to a new snapshot and start the next journal
+     * generation. The snapshot is renamed into place atomically, and names
+     * the generation whose journal should be replayed on top of it, so a
+     * crash at any point leaves a consistent pair of files behind.
+     */
+    private void compact() throws IOException {
+        synchronized (ioLock) {
+            long nextGeneration = generation + 1;
+            StringBuilder snapshot = new StringBuilder(GENERATION_HEADER).append(nextGeneration).append('\n');
+
+            synchronized (this) {
+                // the state already includes every pending record
+                pending = new StringBuilder();
+                for (Map.Entry<String, TopicState> topic : state.entrySet()) {
+                    for (QueuedEntry entry : topic.getValue().queue.values()) {
+                        writeRecord(snapshot, JOIN, topic.getKey(), Long.toString(entry.memberId),
+                            Long.toString(entry.enqueuedAt), entry.message);
+                    }
+                    for (RoomEntry room : topic.getValue().rooms.values()) {
+                        writeRecord(snapshot, ROOM_OPEN, topic.getKey(), room.name,
+                            Long.toString(room.textChannelId), Long.toString(room.voiceChannelId));
+                    }
+                }
+            }
+
+            Path temporary = directory.resolve(guildId + ".snapshot.tmp");
+            try (FileChannel channel = FileChannel.open(temporary,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(snapshot.toString().getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temporary, snapshotPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            if (journalChannel != null) journalChannel.close();
+            journalChannel = FileChannel.open(journalPath(nextGeneration),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            generation = nextGeneration;
+            journalBytes = 0;
+            lastCompaction = System.nanoTime();
+
+            deleteOldJournals();
+        }
+    }
+
+    /**
+     * Delete journal files from generations before the current one.
+     */
+    private void deleteOldJournals() throws IOException {
+        String current = journalPath(generation).getFileName().toString();
+        try (DirectoryStream<Path> journals = Files.newDirectoryStream(directory, guildId + "-*.journal")) {
+            for (Path journal : journals) {
+                if (!journal.getFileName().toString().equals(current)) {
+                    Files.deleteIfExists(journal);
+                }
+            }
+        }
+    }
+
+    private Path snapshotPath() {
+        return directory.resolve(guildId + ".snapshot");
+    }
+
+    private Path journalPath(long generation) {
+        return directory.resolve(guildId + "-" + generation + ".journal");
+    }
+
+    private static void writeRecord(StringBuilder builder, String... fields) {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) builder.append('\t');
+            escape(fields[i], builder);
+        }
+        builder.append('\n');
+    }
+
+    /**
+     * Escape backslashes, tabs and line breaks so that a field always fits on
+     * one line of the journal.
+     */
+    private static void escape(String field, StringBuilder builder) {
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            switch (c) {
+                case '\\' -> builder.append("\\\\");
+                case '\t' -> builder.append("\\t");
+                case '\n' -> builder.append("\\n");
+                case '\r' -> builder.append("\\r");
+                default -> builder.append(c);
+            }
+        }
+    }
+
+    private static String unescape(String field) {
+        if (field.indexOf('\\') < 0) return field;
+
+        StringBuilder builder = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '\\' && i + 1 < field.length()) {
+                char next = field.charAt(++i);
+                switch (next) {
+                    case 't' -> builder.append('\t');
+                    case 'n' -> builder.append('\n');
+                    case 'r' -> builder.append('\r');
+                    default -> builder.append(next);
+                }
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,65 @@
+package simulator;
+
+import java.lang.reflect.Proxy;
+
+/**
+ * Creates fakes of JDA interfaces. A fake is a dynamic proxy that hands every
+ * call to a Handler, which answers the methods the bot uses and rejects the
+ * rest with unsupported(), so the simulation fails loudly when the bot
+ * starts using something the fake does not model.
+ */
+final class Fake {
+    private Fake() {
+    }
+
+    /**
+     * Answers the calls made to a fake.
+     */
+    interface Handler {
+        /**
+         * Answer a call.
+         *
+         * @param self The fake itself, for builder methods that return it
+         * @param method The name of the called method
+         * @param args The call's arguments, never null
+         *
+         * @return The call's result
+         */
+        Object handle(Object self, String method, Object[] args);
+    }
+
+    /**
+     * Create a fake.
+     *
+     * @param type The interface to fake
+     * @param handler The handler that answers calls
+     * @param <T> The interface's type
+     *
+     * @return The fake
+     */
+    static <T> T of(Class<T> type, Handler handler) {
+        Object fake = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return switch (method.getName()) {
+                    case "equals" -> proxy == args[0];
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    default -> "Fake " + type.getSimpleName();
+                };
+            }
+            return handler.handle(proxy, method.getName(), args == null ? new Object[0] : args);
+        });
+        return type.cast(fake);
+    }
+
+    /**
+     * Reject a call the fake does not model.
+     *
+     * @param type The faked interface
+     * @param method The name of the called method
+     *
+     * @return The exception to throw
+     */
+    static UnsupportedOperationException unsupported(Class<?> type, String method) {
+        return new UnsupportedOperationException("Fake " + type.getSimpleName() + " does not support " + method);
+    }
+}
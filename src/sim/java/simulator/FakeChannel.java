@@ -0,0 +1,308 @@
+package simulator;
+
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.IPermissionHolder;
+import net.dv8tion.jda.api.entities.Invite;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.entities.MessageHistory;
+import net.dv8tion.jda.api.entities.PermissionOverride;
+import net.dv8tion.jda.api.entities.Role;
+import net.dv8tion.jda.api.entities.TextChannel;
+import net.dv8tion.jda.api.entities.VoiceChannel;
+import net.dv8tion.jda.api.managers.ChannelManager;
+import net.dv8tion.jda.api.requests.RestAction;
+import net.dv8tion.jda.api.requests.restaction.AuditableRestAction;
+import net.dv8tion.jda.api.requests.restaction.InviteAction;
+import net.dv8tion.jda.api.requests.restaction.MessageAction;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * A text or voice channel of a FakeGuild. Permission overrides and message
+ * history are tracked, so rooms can be opened, locked and purged the same
+ * way they are on Discord.
+ */
+class FakeChannel {
+    /**
+     * Messages deleted by a single bulk delete call
+     */
+    private static final int BULK_DELETE_LIMIT = 100;
+
+    /**
+     * A permission override on this channel.
+     */
+    private static class Overwrite {
+        private final IPermissionHolder holder;
+        private final EnumSet<Permission> allowed;
+        private final EnumSet<Permission> denied;
+
+        private Overwrite(IPermissionHolder holder, Collection<Permission> allowed, Collection<Permission> denied) {
+            this.holder = holder;
+            this.allowed = allowed == null || allowed.isEmpty() ? EnumSet.noneOf(Permission.class) : EnumSet.copyOf(allowed);
+            this.denied = denied == null || denied.isEmpty() ? EnumSet.noneOf(Permission.class) : EnumSet.copyOf(denied);
+        }
+    }
+
+    private final FakeGuild guild;
+    private final FakeRest rest;
+    private final long id;
+    private final String name;
+    private final boolean voice;
+    private final boolean inCategory;
+    private final Object channel;
+
+    /**
+     * Map from permission holder IDs to their overrides
+     */
+    private final ConcurrentHashMap<Long, Overwrite> overwrites = new ConcurrentHashMap<>();
+
+    /**
+     * Messages in this channel, newest first
+     */
+    private final ConcurrentLinkedDeque<Message> history = new ConcurrentLinkedDeque<>();
+
+    /**
+     * Constructs a channel. The channel is not added to the guild.
+     *
+     * @param guild The guild the channel belongs to
+     * @param id The channel's ID
+     * @param name The channel's name
+     * @param voice True for a voice channel, false for a text channel
+     * @param inCategory True if the channel is in the mentoring category
+     */
+    FakeChannel(FakeGuild guild, long id, String name, boolean voice, boolean inCategory) {
+        this.guild = guild;
+        this.rest = guild.getRest();
+        this.id = id;
+        this.name = name;
+        this.voice = voice;
+        this.inCategory = inCategory;
+        this.channel = voice
+            ? Fake.of(VoiceChannel.class, this::handle)
+            : Fake.of(TextChannel.class, this::handle);
+    }
+
+    private Object handle(Object self, String method, Object[] args) {
+        return switch (method) {
+            case "getIdLong" -> id;
+            case "getId" -> Long.toString(id);
+            case "getName" -> name;
+            case "getGuild" -> guild.getGuild();
+            case "getParent" -> inCategory ? guild.getCategory() : null;
+            case "getAsMention" -> "<#" + id + ">";
+            case "getManager" -> manager();
+            case "getPermissionOverrides" -> permissionOverrides();
+            case "delete" -> rest.action(AuditableRestAction.class, "channel_delete", id, () -> {
+                guild.removeChannel(this);
+                return null;
+            }, null);
+            case "sendMessage" -> {
+                if (voice) throw Fake.unsupported(VoiceChannel.class, method);
+                String content = args[0] instanceof MessageEmbed
+                    ? "[embed] " + ((MessageEmbed) args[0]).getTitle()
+                    : args[0].toString();
+                yield rest.action(MessageAction.class, "message", id, () -> {
+                    Message message = guild.message(guild.getSelfMember(), this, content);
+                    history.addFirst(message);
+                    guild.messageSent(this, content);
+                    return message;
+                }, null);
+            }
+            case "getHistory" -> Fake.of(MessageHistory.class, (messageHistory, historyMethod, historyArgs) -> {
+                if (!historyMethod.equals("retrievePast")) throw Fake.unsupported(MessageHistory.class, historyMethod);
+                int limit = (Integer) historyArgs[0];
+                return rest.action(RestAction.class, "message_history", id, () -> latestMessages(limit), null);
+            });
+            case "purgeMessages" -> purge(messagesArgument(args[0]));
+            case "getMembers" -> List.of();
+            case "createInvite" -> {
+                if (!voice) throw Fake.unsupported(TextChannel.class, method);
+                yield rest.action(InviteAction.class, "invite", id, this::invite,
+                    (action, actionMethod, actionArgs) -> switch (actionMethod) {
+                        case "setMaxAge", "setMaxUses", "setTemporary", "setUnique" -> action;
+                        default -> throw Fake.unsupported(InviteAction.class, actionMethod);
+                    });
+            }
+            default -> throw Fake.unsupported(voice ? VoiceChannel.class : TextChannel.class, method);
+        };
+    }
+
+    /**
+     * Create a manager whose changes are sent as a single channel edit.
+     *
+     * @return The fake ChannelManager
+     */
+    private ChannelManager manager() {
+        List<Overwrite> puts = new ArrayList<>();
+        List<Long> removals = new ArrayList<>();
+        return rest.action(ChannelManager.class, "channel_edit", id, () -> {
+            synchronized (puts) {
+                for (Long holderId : removals) {
+                    overwrites.remove(holderId);
+                }
+                for (Overwrite overwrite : puts) {
+                    overwrites.put(overwrite.holder.getIdLong(), overwrite);
+                }
+            }
+            return null;
+        }, (manager, method, args) -> {
+            synchronized (puts) {
+                switch (method) {
+                    case "putPermissionOverride" -> puts.add(new Overwrite((IPermissionHolder) args[0],
+                        toPermissions(args[1]), toPermissions(args[2])));
+                    case "removePermissionOverride" -> removals.add(((IPermissionHolder) args[0]).getIdLong());
+                    default -> throw Fake.unsupported(ChannelManager.class, method);
+                }
+            }
+            return manager;
+        });
+    }
+
+    /**
+     * Add a permission override without a REST call, e.g. one sent along
+     * with the channel creation request.
+     *
+     * @param holder The role or member the override is for
+     * @param allowed The allowed permissions, or null
+     * @param denied The denied permissions, or null
+     */
+    void putOverwrite(IPermissionHolder holder, Collection<Permission> allowed, Collection<Permission> denied) {
+        overwrites.put(holder.getIdLong(), new Overwrite(holder, allowed, denied));
+    }
+
+    private List<PermissionOverride> permissionOverrides() {
+        List<PermissionOverride> overrides = new ArrayList<>();
+        for (Overwrite overwrite : overwrites.values()) {
+            boolean role = overwrite.holder instanceof Role;
+            long holderId = overwrite.holder.getIdLong();
+            overrides.add(Fake.of(PermissionOverride.class, (self, method, args) -> switch (method) {
+                case "getIdLong" -> holderId;
+                case "getId" -> Long.toString(holderId);
+                case "isRoleOverride" -> role;
+                case "isMemberOverride" -> !role;
+                case "getRole" -> role ? overwrite.holder : null;
+                case "getMember" -> role ? null : overwrite.holder;
+                case "getPermissionHolder" -> overwrite.holder;
+                case "getAllowed" -> EnumSet.copyOf(overwrite.allowed);
+                case "getDenied" -> EnumSet.copyOf(overwrite.denied);
+                case "getChannel" -> channel;
+                case "getGuild" -> guild.getGuild();
+                case "delete" -> rest.action(AuditableRestAction.class, "permission_override", id, () -> {
+                    overwrites.remove(holderId, overwrite);
+                    return null;
+                }, null);
+                default -> throw Fake.unsupported(PermissionOverride.class, method);
+            }));
+        }
+        return overrides;
+    }
+
+    private List<Message> latestMessages(int limit) {
+        List<Message> messages = new ArrayList<>(limit);
+        for (Message message : history) {
+            if (messages.size() == limit) break;
+            messages.add(message);
+        }
+        return messages;
+    }
+
+    /**
+     * Delete messages the way JDA's purgeMessages() does with the Manage
+     * Messages permission: a single message is deleted on its own, and
+     * anything more in bulk deletes of up to 100.
+     *
+     * @param messages The messages to delete
+     *
+     * @return One future per REST call
+     */
+    private List<CompletableFuture<Void>> purge(List<Message> messages) {
+        List<CompletableFuture<Void>> deletions = new ArrayList<>();
+        if (messages.size() == 1) {
+            deletions.add(rest.call("message_delete", id, () -> {
+                history.remove(messages.get(0));
+                return null;
+            }));
+            return deletions;
+        }
+
+        for (int start = 0; start < messages.size(); start += BULK_DELETE_LIMIT) {
+            List<Message> chunk = messages.subList(start, Math.min(messages.size(), start + BULK_DELETE_LIMIT));
+            deletions.add(rest.call("message_bulk_delete", id, () -> {
+                history.removeAll(chunk);
+                return null;
+            }));
+        }
+        return deletions;
+    }
+
+    private Invite invite() {
+        String code = Long.toString(guild.nextId(), 36);
+        return Fake.of(Invite.class, (self, method, args) -> switch (method) {
+            case "getCode" -> code;
+            case "getUrl" -> "https://discord.gg/" + code;
+            default -> throw Fake.unsupported(Invite.class, method);
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Message> messagesArgument(Object messages) {
+        return new ArrayList<>((Collection<Message>) messages);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Collection<Permission> toPermissions(Object permissions) {
+        return (Collection<Permission>) permissions;
+    }
+
+    /**
+     * Get this channel's ID.
+     *
+     * @return The channel's ID
+     */
+    long getId() {
+        return id;
+    }
+
+    /**
+     * Check if this is a voice channel.
+     *
+     * @return True for a voice channel, false for a text channel
+     */
+    boolean isVoice() {
+        return voice;
+    }
+
+    /**
+     * Check if this channel is in the mentoring category.
+     *
+     * @return True if the channel is a room channel
+     */
+    boolean isInCategory() {
+        return inCategory;
+    }
+
+    /**
+     * Get the JDA view of this channel.
+     *
+     * @return A TextChannel or VoiceChannel, depending on this channel's type
+     */
+    Object getChannel() {
+        return channel;
+    }
+
+    /**
+     * Get the JDA view of this text channel.
+     *
+     * @return This channel as a TextChannel
+     */
+    TextChannel asText() {
+        return (TextChannel) channel;
+    }
+}
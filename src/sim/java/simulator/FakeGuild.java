@@ -0,0 +1,378 @@
+package simulator;
+
+import entities.Server;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.Category;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.IPermissionHolder;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.Role;
+import net.dv8tion.jda.api.events.message.guild.GuildMessageReceivedEvent;
+import net.dv8tion.jda.api.requests.RestAction;
+import net.dv8tion.jda.api.requests.restaction.AuditableRestAction;
+import net.dv8tion.jda.api.requests.restaction.ChannelAction;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * A guild that only exists in memory, backed by a FakeRest. It has the
+ * mentoring category, roles, members and channels; creating and deleting
+ * channels goes through the fake REST layer like it would on Discord.
+ */
+class FakeGuild {
+    private static final JDA jda = Fake.of(JDA.class, (self, method, args) -> {
+        throw Fake.unsupported(JDA.class, method);
+    });
+
+    private final FakeRest rest;
+    private final long id;
+    private final AtomicLong snowflakes;
+    private final Guild guild;
+    private final Category category;
+    private final Role everyone;
+    private final Member self;
+
+    /**
+     * Every role except the public role, in creation order
+     */
+    private final List<Role> roles = new CopyOnWriteArrayList<>();
+
+    /**
+     * Map from member IDs to Members
+     */
+    private final ConcurrentHashMap<Long, Member> members = new ConcurrentHashMap<>();
+
+    /**
+     * Map from channel IDs to channels
+     */
+    private final ConcurrentHashMap<Long, FakeChannel> channels = new ConcurrentHashMap<>();
+
+    private volatile BiConsumer<FakeChannel, String> messageListener = (channel, content) -> { };
+
+    /**
+     * Constructs a guild with only the mentoring category, the public role
+     * and the bot's own member.
+     *
+     * @param rest The REST layer that channel changes go through
+     * @param id The guild's ID
+     */
+    FakeGuild(FakeRest rest, long id) {
+        this.rest = rest;
+        this.id = id;
+        this.snowflakes = new AtomicLong(id);
+        this.guild = Fake.of(Guild.class, this::handle);
+        this.everyone = role(id, "@everyone");
+
+        long categoryId = nextId();
+        this.category = Fake.of(Category.class, (category, method, args) -> switch (method) {
+            case "getIdLong" -> categoryId;
+            case "getId" -> Long.toString(categoryId);
+            case "getName" -> Server.MENTORING_CATEGORY_NAME;
+            case "getGuild" -> guild;
+            case "getTextChannels" -> categoryChannels(false);
+            case "getVoiceChannels" -> categoryChannels(true);
+            case "createTextChannel" -> createChannel((String) args[0], false);
+            case "createVoiceChannel" -> createChannel((String) args[0], true);
+            default -> throw Fake.unsupported(Category.class, method);
+        });
+        this.self = addMember("Mentorbot");
+    }
+
+    private Object handle(Object self, String method, Object[] args) {
+        return switch (method) {
+            case "getIdLong" -> id;
+            case "getId" -> Long.toString(id);
+            case "getName" -> "Simulated hackathon";
+            case "getCategoriesByName" -> matches((String) args[0], (Boolean) args[1], Server.MENTORING_CATEGORY_NAME)
+                ? List.of(category)
+                : List.of();
+            case "getRoles" -> {
+                List<Role> all = new ArrayList<>(roles);
+                all.add(everyone);
+                yield all;
+            }
+            case "getRolesByName" -> {
+                List<Role> named = new ArrayList<>();
+                for (Role role : roles) {
+                    if (matches((String) args[0], (Boolean) args[1], role.getName())) named.add(role);
+                }
+                yield named;
+            }
+            case "getPublicRole" -> everyone;
+            case "getSelfMember" -> this.self;
+            case "getMemberById" -> members.get(toId(args[0]));
+            case "retrieveMemberById" -> {
+                long memberId = toId(args[0]);
+                yield rest.action(RestAction.class, "member_fetch", id, () -> members.get(memberId), null);
+            }
+            case "getTextChannelById" -> channelOfType(toId(args[0]), false);
+            case "getVoiceChannelById" -> channelOfType(toId(args[0]), true);
+            case "kickVoiceMember" -> rest.action(AuditableRestAction.class, "voice_kick", id, () -> null, null);
+            default -> throw Fake.unsupported(Guild.class, method);
+        };
+    }
+
+    /**
+     * Create a channel creation request for the mentoring category. The
+     * channel only exists once the request completes.
+     *
+     * @param name The channel's name
+     * @param voice True for a voice channel
+     *
+     * @return The fake ChannelAction
+     */
+    private ChannelAction<?> createChannel(String name, boolean voice) {
+        List<Object[]> overrides = new ArrayList<>();
+        return rest.action(ChannelAction.class, "channel_create", id, () -> {
+            FakeChannel channel = new FakeChannel(this, nextId(), name, voice, true);
+            synchronized (overrides) {
+                for (Object[] override : overrides) {
+                    channel.putOverwrite((IPermissionHolder) override[0], toPermissions(override[1]),
+                        toPermissions(override[2]));
+                }
+            }
+            channels.put(channel.getId(), channel);
+            return channel.getChannel();
+        }, (action, method, args) -> {
+            if (!method.equals("addPermissionOverride")) throw Fake.unsupported(ChannelAction.class, method);
+            synchronized (overrides) {
+                overrides.add(args);
+            }
+            return action;
+        });
+    }
+
+    private Role role(long roleId, String name) {
+        return Fake.of(Role.class, (role, method, args) -> switch (method) {
+            case "getIdLong" -> roleId;
+            case "getId" -> Long.toString(roleId);
+            case "getName" -> name;
+            case "getAsMention" -> roleId == id ? "@everyone" : "<@&" + roleId + ">";
+            case "isPublicRole" -> roleId == id;
+            case "getGuild" -> guild;
+            default -> throw Fake.unsupported(Role.class, method);
+        });
+    }
+
+    /**
+     * Add a role.
+     *
+     * @param name The role's name
+     *
+     * @return The new Role
+     */
+    Role addRole(String name) {
+        Role role = role(nextId(), name);
+        roles.add(role);
+        return role;
+    }
+
+    /**
+     * Add a member without the Administrator permission.
+     *
+     * @param name The member's name
+     * @param memberRoles The member's roles
+     *
+     * @return The new Member
+     */
+    Member addMember(String name, Role... memberRoles) {
+        long memberId = nextId();
+        List<Role> roleList = List.of(memberRoles);
+        Member member = Fake.of(Member.class, (self, method, args) -> switch (method) {
+            case "getIdLong" -> memberId;
+            case "getId" -> Long.toString(memberId);
+            case "getEffectiveName" -> name;
+            case "getAsMention" -> "<@" + memberId + ">";
+            case "getRoles" -> roleList;
+            case "getGuild" -> guild;
+            case "hasPermission" -> false;
+            case "isOwner" -> false;
+            default -> throw Fake.unsupported(Member.class, method);
+        });
+        members.put(memberId, member);
+        return member;
+    }
+
+    /**
+     * Add a text channel outside the mentoring category, e.g. one that
+     * commands are sent in.
+     *
+     * @param name The channel's name
+     *
+     * @return The new channel
+     */
+    FakeChannel addTextChannel(String name) {
+        FakeChannel channel = new FakeChannel(this, nextId(), name, false, false);
+        channels.put(channel.getId(), channel);
+        return channel;
+    }
+
+    /**
+     * Create a message.
+     *
+     * @param author The member who sent the message
+     * @param channel The text channel the message was sent in
+     * @param content The message's content
+     *
+     * @return The Message
+     */
+    Message message(Member author, FakeChannel channel, String content) {
+        long messageId = nextId();
+        return Fake.of(Message.class, (self, method, args) -> switch (method) {
+            case "getIdLong" -> messageId;
+            case "getId" -> Long.toString(messageId);
+            case "getContentRaw", "getContentDisplay" -> content;
+            case "getMember" -> author;
+            case "getMentionedMembers" -> List.of();
+            case "isWebhookMessage" -> false;
+            case "getTextChannel", "getChannel" -> channel.asText();
+            case "getGuild" -> guild;
+            default -> throw Fake.unsupported(Message.class, method);
+        });
+    }
+
+    /**
+     * Create the event for a member sending a message.
+     *
+     * @param author The member sending the message
+     * @param channel The text channel the message is sent in
+     * @param content The message's content
+     *
+     * @return The message event
+     */
+    GuildMessageReceivedEvent messageEvent(Member author, FakeChannel channel, String content) {
+        return new GuildMessageReceivedEvent(jda, 0, message(author, channel, content));
+    }
+
+    /**
+     * Set the function called whenever the bot's message to a channel is
+     * delivered.
+     *
+     * @param listener Receives the channel and the message's content
+     */
+    void onMessage(BiConsumer<FakeChannel, String> listener) {
+        this.messageListener = listener;
+    }
+
+    /**
+     * Called by a channel once the bot's message to it was delivered.
+     *
+     * @param channel The channel
+     * @param content The message's content
+     */
+    void messageSent(FakeChannel channel, String content) {
+        messageListener.accept(channel, content);
+    }
+
+    /**
+     * Called by a channel once it was deleted.
+     *
+     * @param channel The deleted channel
+     */
+    void removeChannel(FakeChannel channel) {
+        channels.remove(channel.getId(), channel);
+    }
+
+    /**
+     * Get a channel by ID.
+     *
+     * @param channelId The channel's ID
+     *
+     * @return The channel, or null if it does not exist
+     */
+    FakeChannel getChannel(long channelId) {
+        return channels.get(channelId);
+    }
+
+    /**
+     * Get the number of channels in the mentoring category.
+     *
+     * @return The number of room channels
+     */
+    int getRoomChannelCount() {
+        int count = 0;
+        for (FakeChannel channel : channels.values()) {
+            if (channel.isInCategory()) count++;
+        }
+        return count;
+    }
+
+    private List<Object> categoryChannels(boolean voice) {
+        List<Object> found = new ArrayList<>();
+        for (FakeChannel channel : channels.values()) {
+            if (channel.isInCategory() && channel.isVoice() == voice) found.add(channel.getChannel());
+        }
+        return found;
+    }
+
+    private Object channelOfType(long channelId, boolean voice) {
+        FakeChannel channel = channels.get(channelId);
+        return channel != null && channel.isVoice() == voice ? channel.getChannel() : null;
+    }
+
+    /**
+     * Hand out a new, unique ID.
+     *
+     * @return The ID
+     */
+    long nextId() {
+        return snowflakes.incrementAndGet();
+    }
+
+    /**
+     * Get the JDA view of this guild.
+     *
+     * @return The Guild
+     */
+    Guild getGuild() {
+        return guild;
+    }
+
+    /**
+     * Get the mentoring category.
+     *
+     * @return The Category
+     */
+    Category getCategory() {
+        return category;
+    }
+
+    /**
+     * Get the bot's own member.
+     *
+     * @return The bot's Member
+     */
+    Member getSelfMember() {
+        return self;
+    }
+
+    /**
+     * Get the REST layer this guild's changes go through.
+     *
+     * @return The FakeRest
+     */
+    FakeRest getRest() {
+        return rest;
+    }
+
+    private static boolean matches(String wanted, boolean ignoreCase, String name) {
+        return ignoreCase ? wanted.equalsIgnoreCase(name) : wanted.equals(name);
+    }
+
+    private static long toId(Object id) {
+        return id instanceof String ? Long.parseLong((String) id) : (Long) id;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Collection<Permission> toPermissions(Object permissions) {
+        return (Collection<Permission>) permissions;
+    }
+}
@@ -0,0 +1,211 @@
+package simulator;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * An in-memory stand-in for Discord's REST API as JDA sees it. Every call
+ * waits for a slot in its route's rate limit bucket and in the global
+ * bucket, then takes the scenario's latency before its effect is applied.
+ *
+ * Like JDA's requester, calls that would exceed a bucket are held back until
+ * the bucket resets instead of being sent and answered with a 429.
+ */
+class FakeRest {
+    static final String GLOBAL = "global";
+
+    /**
+     * A fixed-window rate limit bucket. Reservations are handed out in
+     * order, so calls held back by a full bucket keep their place.
+     */
+    private static class Bucket {
+        private final int limit;
+        private final long resetNanos;
+        private long windowStart = Long.MIN_VALUE / 2;
+        private int remaining;
+
+        private Bucket(Scenario.Limit limit) {
+            this.limit = limit.limit;
+            this.resetNanos = TimeUnit.MILLISECONDS.toNanos(limit.resetMillis);
+        }
+
+        /**
+         * Reserve a slot for a call.
+         *
+         * @param at The earliest time the call could be sent, from System.nanoTime()
+         *
+         * @return The time the call may be sent
+         */
+        private synchronized long reserve(long at) {
+            if (at - windowStart >= resetNanos) {
+                windowStart = at;
+                remaining = limit;
+            }
+            if (remaining == 0) {
+                windowStart += resetNanos;
+                remaining = limit;
+            }
+            remaining--;
+            return Math.max(at, windowStart);
+        }
+    }
+
+    private final Scenario scenario;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "fake-discord-rest");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Map from route and bucket keys to their buckets
+     */
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final Bucket global;
+
+    /**
+     * Map from routes to the number of calls made to them
+     */
+    private final ConcurrentHashMap<String, LongAdder> calls = new ConcurrentHashMap<>();
+    private final LongAdder heldBack = new LongAdder();
+    private final LongAdder heldBackNanos = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Constructs a REST layer that behaves as the scenario describes.
+     *
+     * @param scenario The scenario with latency and rate limits
+     */
+    FakeRest(Scenario scenario) {
+        this.scenario = scenario;
+        Scenario.Limit globalLimit = scenario.rateLimits.get(GLOBAL);
+        this.global = globalLimit == null ? null : new Bucket(globalLimit);
+    }
+
+    /**
+     * Make a REST call.
+     *
+     * @param route The kind of call, e.g. "message"
+     * @param bucketKey What the route's bucket is per, e.g. a channel ID
+     * @param perform Applies the call's effect and returns its result
+     * @param <T> The call's result type
+     *
+     * @return A future that completes with the call's result
+     */
+    <T> CompletableFuture<T> call(String route, Object bucketKey, Supplier<T> perform) {
+        calls.computeIfAbsent(route, k -> new LongAdder()).increment();
+        inFlight.incrementAndGet();
+
+        long now = System.nanoTime();
+        long sendAt = now;
+        Scenario.Limit limit = scenario.rateLimits.get(route);
+        if (limit != null) {
+            sendAt = buckets.computeIfAbsent(route + ":" + bucketKey, k -> new Bucket(limit)).reserve(sendAt);
+        }
+        if (global != null) sendAt = global.reserve(sendAt);
+
+        if (sendAt > now) {
+            heldBack.increment();
+            heldBackNanos.add(sendAt - now);
+        }
+
+        long latency = TimeUnit.MILLISECONDS.toNanos(scenario.latencyMillis
+            + (scenario.jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(scenario.jitterMillis + 1) : 0));
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+        scheduler.schedule(() -> {
+            try {
+                future.complete(perform.get());
+            } catch (RuntimeException ex) {
+                future.completeExceptionally(ex);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }, sendAt - now + latency, TimeUnit.NANOSECONDS);
+        return future;
+    }
+
+    /**
+     * Create a fake RestAction that makes a REST call when it is queued,
+     * submitted or completed.
+     *
+     * @param type The RestAction interface to fake
+     * @param route The kind of call
+     * @param bucketKey What the route's bucket is per
+     * @param perform Applies the call's effect and returns its result
+     * @param builder Answers any other methods, e.g. setters on the action,
+     *     or null if there are none
+     * @param <A> The action's type
+     *
+     * @return The fake action
+     */
+    @SuppressWarnings("unchecked")
+    <A> A action(Class<A> type, String route, Object bucketKey, Supplier<?> perform, Fake.Handler builder) {
+        return Fake.of(type, (self, method, args) -> switch (method) {
+            case "submit" -> call(route, bucketKey, perform);
+            case "complete" -> call(route, bucketKey, perform).join();
+            case "queue" -> {
+                call(route, bucketKey, perform).whenComplete((result, error) -> {
+                    if (error == null && args.length > 0 && args[0] != null) {
+                        ((Consumer<Object>) args[0]).accept(result);
+                    } else if (error != null && args.length > 1 && args[1] != null) {
+                        ((Consumer<Throwable>) args[1]).accept(error);
+                    }
+                });
+                yield null;
+            }
+            default -> {
+                if (builder == null) throw Fake.unsupported(type, method);
+                yield builder.handle(self, method, args);
+            }
+        });
+    }
+
+    /**
+     * Get the number of calls that have not completed yet.
+     *
+     * @return The number of calls in flight
+     */
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Get the number of calls made to each route.
+     *
+     * @return Map from routes to call counts, sorted by route
+     */
+    Map<String, Long> getCalls() {
+        TreeMap<String, Long> counts = new TreeMap<>();
+        calls.forEach((route, count) -> counts.put(route, count.sum()));
+        return counts;
+    }
+
+    /**
+     * Get the number of calls that had to wait for a rate limit bucket.
+     *
+     * @return The number of held back calls
+     */
+    long getHeldBack() {
+        return heldBack.sum();
+    }
+
+    /**
+     * Get the total time calls spent waiting for rate limit buckets.
+     *
+     * @return The total wait in nanoseconds
+     */
+    long getHeldBackNanos() {
+        return heldBackNanos.sum();
+    }
+}
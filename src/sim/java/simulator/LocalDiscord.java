@@ -0,0 +1,771 @@
+package simulator;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A local HTTP stand-in for the parts of Discord's REST API that rooms and
+ * servers use: channels, permission overwrites, invites, roles, messages and
+ * reactions. Channels and messages only exist in memory. Every answer carries
+ * Discord's rate limit headers, and a call to an empty bucket is answered with
+ * a 429, so JDA's own rate limiter runs like it does against Discord.
+ *
+ * Run it with `./gradlew localDiscord` and point the bot at it with
+ * MENTORBOT_REST_URL. Latency and rate limits take the simulator's options,
+ * see Scenario; GET /stats lists the calls made so far.
+ */
+public class LocalDiscord {
+    /**
+     * Splits a request path into the API version, if any, and the route
+     */
+    private static final Pattern API_PATH = Pattern.compile("/api(?:/v(\\d+))?(/.*)");
+
+    /**
+     * The API version JDA 4.2 uses when the path does not name one
+     */
+    private static final int DEFAULT_VERSION = 6;
+
+    /**
+     * Since v8, overwrite types are numbers, permissions are strings and
+     * retry_after is in seconds
+     */
+    private static final int V8 = 8;
+
+    /**
+     * Snowflakes count milliseconds from the first second of 2015
+     */
+    private static final long DISCORD_EPOCH = 1420070400000L;
+
+    private static final int TEXT = 0;
+    private static final int VOICE = 2;
+    private static final int ROLE = 0;
+    private static final int MEMBER = 1;
+
+    /**
+     * Discord's error codes for missing entities
+     */
+    private static final int UNKNOWN_CHANNEL = 10003;
+    private static final int UNKNOWN_MESSAGE = 10008;
+    private static final int UNKNOWN_ROLE = 10011;
+
+    /**
+     * A fixed-window rate limit bucket, as Discord enforces it: once the
+     * window's calls are used up, calls are refused until it resets.
+     */
+    private static class Bucket {
+        private final String hash;
+        private final int limit;
+        private final long resetMillis;
+        private long resetAt;
+        private int remaining;
+
+        private Bucket(String hash, Scenario.Limit limit) {
+            this.hash = hash;
+            this.limit = limit.limit;
+            this.resetMillis = limit.resetMillis;
+        }
+
+        /**
+         * Take a call from the bucket if one is left.
+         *
+         * @param now The current time in milliseconds
+         * @param headers Response headers to describe the bucket in, or null
+         *
+         * @return The milliseconds until the bucket resets if it is empty,
+         *     or 0 if the call was taken
+         */
+        private synchronized long take(long now, Headers headers) {
+            if (now >= resetAt) {
+                resetAt = now + resetMillis;
+                remaining = limit;
+            }
+            boolean taken = remaining > 0;
+            if (taken) remaining--;
+
+            if (headers != null) {
+                headers.set("X-RateLimit-Limit", Integer.toString(limit));
+                headers.set("X-RateLimit-Remaining", Integer.toString(remaining));
+                headers.set("X-RateLimit-Reset", String.format("%.3f", resetAt / 1000.0));
+                headers.set("X-RateLimit-Reset-After", String.format("%.3f", (resetAt - now) / 1000.0));
+                headers.set("X-RateLimit-Bucket", hash);
+            }
+            return taken ? 0 : resetAt - now;
+        }
+    }
+
+    /**
+     * A channel the stand-in knows about. Guarded by its own lock.
+     */
+    private static class Channel {
+        private final long id;
+        private final long guildId;
+        private final int type;
+        private String name;
+        private long parentId;
+
+        /**
+         * Map from role and member IDs to their overwrites, each holding a
+         * numeric type and allow and deny bits
+         */
+        private final Map<Long, long[]> overwrites = new LinkedHashMap<>();
+
+        /**
+         * Messages, newest first
+         */
+        private final LinkedList<JSONObject> messages = new LinkedList<>();
+
+        private Channel(long id, long guildId, int type, String name) {
+            this.id = id;
+            this.guildId = guildId;
+            this.type = type;
+            this.name = name;
+        }
+    }
+
+    /**
+     * A call the stand-in serves: its route name for rate limits and stats,
+     * what the route's bucket is per, and how to answer it
+     */
+    private static class Call {
+        private final String route;
+        private final long major;
+        private final Supplier<Reply> perform;
+
+        private Call(String route, long major, Supplier<Reply> perform) {
+            this.route = route;
+            this.major = major;
+            this.perform = perform;
+        }
+    }
+
+    /**
+     * An answer to send: a status code and a JSON body, if any
+     */
+    private static class Reply {
+        private final int status;
+        private final Object body;
+
+        private Reply(int status, Object body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    private final Scenario scenario;
+    private final HttpServer server;
+    private final AtomicLong snowflakes = new AtomicLong();
+    private final long botUserId = nextId();
+
+    /**
+     * Map from route names and majors to their buckets
+     */
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final Bucket global;
+
+    /**
+     * Map from channel IDs to channels
+     */
+    private final ConcurrentHashMap<Long, Channel> channels = new ConcurrentHashMap<>();
+
+    /**
+     * Map from role IDs to roles as Discord sends them
+     */
+    private final ConcurrentHashMap<Long, JSONObject> roles = new ConcurrentHashMap<>();
+
+    /**
+     * Map from route names to the number of calls, and to the number of 429s
+     */
+    private final ConcurrentHashMap<String, LongAdder> calls = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder> refused = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a stand-in. Call start() to begin serving.
+     *
+     * @param scenario The scenario with the port, latency and rate limits
+     *
+     * @throws IOException If the port cannot be bound
+     */
+    LocalDiscord(Scenario scenario) throws IOException {
+        this.scenario = scenario;
+        Scenario.Limit globalLimit = scenario.rateLimits.get(FakeRest.GLOBAL);
+        this.global = globalLimit == null ? null : new Bucket(FakeRest.GLOBAL, globalLimit);
+
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", scenario.port), 0);
+        server.createContext("/api", this::handle);
+        server.createContext("/stats", this::handleStats);
+
+        // calls sleep for their latency, so every call needs its own thread
+        server.setExecutor(Executors.newCachedThreadPool());
+    }
+
+    /**
+     * Start serving on background threads.
+     */
+    void start() {
+        server.start();
+        System.out.printf("Serving Discord's REST API at http://127.0.0.1:%d/api%n", server.getAddress().getPort());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            Reply reply;
+            try {
+                reply = answer(exchange);
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+                reply = error(500, 0, "500: Internal Server Error");
+            }
+            sleepLatency();
+            send(exchange, reply);
+        }
+    }
+
+    /**
+     * Serve a request, unless its route's bucket is empty.
+     *
+     * @param exchange The request
+     *
+     * @return The answer
+     *
+     * @throws IOException If the request's body cannot be read
+     */
+    private Reply answer(HttpExchange exchange) throws IOException {
+        Matcher path = API_PATH.matcher(exchange.getRequestURI().getPath());
+        if (!path.matches()) return error(404, 0, "404: Not Found");
+
+        int version = path.group(1) == null ? DEFAULT_VERSION : Integer.parseInt(path.group(1));
+        String[] parts = path.group(2).substring(1).split("/");
+        JSONObject body = readBody(exchange);
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+        Call call = route(exchange.getRequestMethod(), parts, body, query, version);
+        if (call == null) return error(404, 0, "404: Not Found");
+        calls.computeIfAbsent(call.route, k -> new LongAdder()).increment();
+
+        Reply refusal = rateLimit(exchange.getResponseHeaders(), call, version);
+        return refusal != null ? refusal : call.perform.get();
+    }
+
+    /**
+     * Find the call a request makes.
+     *
+     * @param method The HTTP method
+     * @param parts The path's segments after the API version
+     * @param body The request's JSON body, or an empty object
+     * @param query The query parameters
+     * @param version The API version the request uses
+     *
+     * @return The call, or null if the stand-in does not serve the route
+     */
+    private Call route(String method, String[] parts, JSONObject body, Map<String, String> query, int version) {
+        if (parts.length < 2 || !isId(parts[1])) return null;
+        long major = Long.parseLong(parts[1]);
+        String route = method + " " + parts[0] + (parts.length > 2 ? "/" + parts[2] : "");
+
+        if (parts[0].equals("guilds")) {
+            return switch (route) {
+                case "POST guilds/channels" -> parts.length != 3 ? null
+                    : new Call("channel_create", major, () -> createChannel(major, body, version));
+                case "POST guilds/roles" -> parts.length != 3 ? null
+                    : new Call("role_create", major, () -> new Reply(200, editRole(nextId(), body, version)));
+                case "PATCH guilds/roles" -> parts.length != 4 || !isId(parts[3]) ? null
+                    : new Call("role_edit", major, () -> {
+                        long roleId = Long.parseLong(parts[3]);
+                        return roles.containsKey(roleId)
+                            ? new Reply(200, editRole(roleId, body, version))
+                            : error(404, UNKNOWN_ROLE, "Unknown Role");
+                    });
+                case "DELETE guilds/roles" -> parts.length != 4 || !isId(parts[3]) ? null
+                    : new Call("role_delete", major, () -> roles.remove(Long.parseLong(parts[3])) != null
+                        ? new Reply(204, null)
+                        : error(404, UNKNOWN_ROLE, "Unknown Role"));
+                default -> null;
+            };
+        }
+
+        if (!parts[0].equals("channels")) return null;
+        if (parts.length == 2) {
+            return switch (method) {
+                case "GET" -> new Call("channel_get", major, () -> new Reply(200, toJson(channel(major), version)));
+                case "PATCH" -> new Call("channel_edit", major, () -> editChannel(channel(major), body, version));
+                case "DELETE" -> new Call("channel_delete", major, () -> {
+                    Channel channel = channel(major);
+                    if (!channels.remove(major, channel)) return error(404, UNKNOWN_CHANNEL, "Unknown Channel");
+                    return new Reply(200, toJson(channel, version));
+                });
+                default -> null;
+            };
+        }
+
+        return switch (route) {
+            case "PUT channels/permissions", "DELETE channels/permissions" -> parts.length != 4 || !isId(parts[3])
+                ? null
+                : new Call("permission_override", major, () -> {
+                    long holderId = Long.parseLong(parts[3]);
+                    Channel channel = channel(major);
+                    synchronized (channel) {
+                        if (method.equals("PUT")) {
+                            channel.overwrites.put(holderId, toOverwrite(body));
+                        } else {
+                            channel.overwrites.remove(holderId);
+                        }
+                    }
+                    return new Reply(204, null);
+                });
+            case "POST channels/invites" -> parts.length != 3 ? null
+                : new Call("invite", major, () -> new Reply(200, invite(channel(major), body)));
+            case "GET channels/messages" -> parts.length != 3 ? null
+                : new Call("message_history", major, () -> new Reply(200, history(channel(major), query)));
+            case "POST channels/messages" -> {
+                if (parts.length == 3) {
+                    yield new Call("message", major, () -> new Reply(200, sendMessage(channel(major), body)));
+                }
+                if (parts.length == 4 && parts[3].equals("bulk-delete")) {
+                    yield new Call("message_bulk_delete", major, () -> bulkDelete(channel(major), body));
+                }
+                yield null;
+            }
+            case "PATCH channels/messages" -> parts.length != 4 || !isId(parts[3]) ? null
+                : new Call("message_edit", major, () -> editMessage(channel(major), Long.parseLong(parts[3]), body));
+            case "DELETE channels/messages" -> {
+                if (parts.length == 4 && isId(parts[3])) {
+                    long messageId = Long.parseLong(parts[3]);
+                    yield new Call("message_delete", major, () -> findMessage(channel(major), messageId, true) != null
+                        ? new Reply(204, null)
+                        : error(404, UNKNOWN_MESSAGE, "Unknown Message"));
+                }
+                if (parts.length >= 6 && parts[4].equals("reactions")) {
+                    yield new Call("reaction", major, () -> new Reply(204, null));
+                }
+                yield null;
+            }
+            case "PUT channels/messages" -> parts.length == 7 && parts[4].equals("reactions")
+                ? new Call("reaction", major, () -> new Reply(204, null))
+                : null;
+            default -> null;
+        };
+    }
+
+    /**
+     * Take the call from its buckets.
+     *
+     * @param headers The response headers to describe the route's bucket in
+     * @param call The call
+     * @param version The API version the request uses
+     *
+     * @return A 429 reply if a bucket is empty, otherwise null
+     */
+    private Reply rateLimit(Headers headers, Call call, int version) {
+        long now = System.currentTimeMillis();
+        long retryAfter = global == null ? 0 : global.take(now, null);
+        boolean isGlobal = retryAfter > 0;
+
+        Scenario.Limit limit = scenario.rateLimits.get(call.route);
+        if (!isGlobal && limit != null) {
+            // every major of a route shares the bucket hash, like on Discord
+            retryAfter = buckets.computeIfAbsent(call.route + ":" + call.major,
+                k -> new Bucket(Integer.toHexString(call.route.hashCode()), limit)).take(now, headers);
+        }
+        if (retryAfter == 0) return null;
+
+        refused.computeIfAbsent(call.route, k -> new LongAdder()).increment();
+        headers.set("Retry-After", Long.toString((retryAfter + 999) / 1000));
+        headers.set("X-RateLimit-Scope", isGlobal ? "global" : "user");
+        if (isGlobal) headers.set("X-RateLimit-Global", "true");
+
+        JSONObject body = new JSONObject();
+        body.put("message", "You are being rate limited.");
+        body.put("retry_after", version >= V8 ? retryAfter / 1000.0 : retryAfter);
+        body.put("global", isGlobal);
+        return new Reply(429, body);
+    }
+
+    private Reply createChannel(long guildId, JSONObject body, int version) {
+        int type = body.optInt("type", TEXT);
+        Channel channel = new Channel(nextId(), guildId, type == VOICE ? VOICE : TEXT,
+            body.optString("name", "channel"));
+        channel.parentId = body.optLong("parent_id", 0);
+        putOverwrites(channel, body.optJSONArray("permission_overwrites"));
+        channels.put(channel.id, channel);
+        return new Reply(201, toJson(channel, version));
+    }
+
+    private Reply editChannel(Channel channel, JSONObject body, int version) {
+        synchronized (channel) {
+            if (body.has("name")) channel.name = body.getString("name");
+            if (body.has("parent_id")) channel.parentId = body.optLong("parent_id", 0);
+
+            // the overwrites in an edit replace every existing one
+            JSONArray overwrites = body.optJSONArray("permission_overwrites");
+            if (overwrites != null) {
+                channel.overwrites.clear();
+                putOverwrites(channel, overwrites);
+            }
+        }
+        return new Reply(200, toJson(channel, version));
+    }
+
+    private JSONObject editRole(long roleId, JSONObject body, int version) {
+        JSONObject role = roles.computeIfAbsent(roleId, id -> new JSONObject()
+            .put("id", Long.toString(id))
+            .put("name", "new role")
+            .put("color", 0)
+            .put("hoist", false)
+            .put("position", roles.size() + 1)
+            .put("permissions", 0L)
+            .put("managed", false)
+            .put("mentionable", false));
+        synchronized (role) {
+            for (String key : new String[]{"name", "color", "hoist", "mentionable"}) {
+                if (body.has(key)) role.put(key, body.get(key));
+            }
+            if (body.has("permissions")) role.put("permissions", body.getLong("permissions"));
+
+            JSONObject copy = new JSONObject(role.toString());
+            long permissions = role.getLong("permissions");
+            copy.put("permissions", version >= V8 ? Long.toString(permissions) : permissions);
+            return copy;
+        }
+    }
+
+    private JSONObject invite(Channel channel, JSONObject body) {
+        StringBuilder code = new StringBuilder();
+        String alphabet = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+        for (int i = 0; i < 8; i++) {
+            code.append(alphabet.charAt(ThreadLocalRandom.current().nextInt(alphabet.length())));
+        }
+
+        JSONObject invite = new JSONObject();
+        invite.put("code", code.toString());
+        invite.put("guild", new JSONObject()
+            .put("id", Long.toString(channel.guildId))
+            .put("name", "Local Discord")
+            .put("icon", JSONObject.NULL)
+            .put("splash", JSONObject.NULL)
+            .put("features", new JSONArray())
+            .put("verification_level", 0));
+        synchronized (channel) {
+            invite.put("channel", new JSONObject()
+                .put("id", Long.toString(channel.id))
+                .put("name", channel.name)
+                .put("type", channel.type));
+        }
+        invite.put("inviter", botUser());
+        invite.put("uses", 0);
+        invite.put("max_uses", body.optInt("max_uses", 0));
+        invite.put("max_age", body.optInt("max_age", 86400));
+        invite.put("temporary", body.optBoolean("temporary", false));
+        invite.put("created_at", timestamp());
+        return invite;
+    }
+
+    private JSONObject sendMessage(Channel channel, JSONObject body) {
+        JSONObject message = new JSONObject();
+        message.put("id", Long.toString(nextId()));
+        message.put("channel_id", Long.toString(channel.id));
+        if (channel.guildId != 0) message.put("guild_id", Long.toString(channel.guildId));
+        message.put("type", 0);
+        message.put("content", body.optString("content", ""));
+        message.put("author", botUser());
+        message.put("timestamp", timestamp());
+        message.put("edited_timestamp", JSONObject.NULL);
+        message.put("tts", false);
+        message.put("mention_everyone", false);
+        message.put("mentions", new JSONArray());
+        message.put("mention_roles", new JSONArray());
+        message.put("attachments", new JSONArray());
+        JSONArray embeds = body.optJSONArray("embeds");
+        if (embeds == null && body.has("embed")) embeds = new JSONArray().put(body.getJSONObject("embed"));
+        message.put("embeds", embeds == null ? new JSONArray() : embeds);
+        message.put("pinned", false);
+        message.put("reactions", new JSONArray());
+
+        synchronized (channel) {
+            channel.messages.addFirst(message);
+            return new JSONObject(message.toString());
+        }
+    }
+
+    private Reply editMessage(Channel channel, long messageId, JSONObject body) {
+        synchronized (channel) {
+            JSONObject message = findMessage(channel, messageId, false);
+            if (message == null) return error(404, UNKNOWN_MESSAGE, "Unknown Message");
+            if (body.has("content")) message.put("content", body.get("content"));
+            if (body.has("embed")) message.put("embeds", new JSONArray().put(body.get("embed")));
+            if (body.has("embeds")) message.put("embeds", body.get("embeds"));
+            message.put("edited_timestamp", timestamp());
+            return new Reply(200, new JSONObject(message.toString()));
+        }
+    }
+
+    private JSONArray history(Channel channel, Map<String, String> query) {
+        int limit = Math.max(1, Math.min(100, Integer.parseInt(query.getOrDefault("limit", "50"))));
+        long before = Long.parseLong(query.getOrDefault("before", Long.toString(Long.MAX_VALUE)));
+
+        JSONArray page = new JSONArray();
+        synchronized (channel) {
+            for (JSONObject message : channel.messages) {
+                if (page.length() == limit) break;
+                if (message.getLong("id") < before) page.put(new JSONObject(message.toString()));
+            }
+        }
+        return page;
+    }
+
+    private Reply bulkDelete(Channel channel, JSONObject body) {
+        JSONArray ids = body.optJSONArray("messages");
+        if (ids == null || ids.length() < 2 || ids.length() > 100) {
+            return error(400, 50016, "You must provide at least 2 and fewer than 100 messages to delete.");
+        }
+        synchronized (channel) {
+            for (int i = 0; i < ids.length(); i++) {
+                findMessage(channel, ids.getLong(i), true);
+            }
+        }
+        return new Reply(204, null);
+    }
+
+    /**
+     * Find a message in a channel.
+     *
+     * @param channel The channel
+     * @param messageId The message's ID
+     * @param remove True to remove the message from the channel
+     *
+     * @return The message, or null if the channel does not have it
+     */
+    private JSONObject findMessage(Channel channel, long messageId, boolean remove) {
+        synchronized (channel) {
+            Iterator<JSONObject> messages = channel.messages.iterator();
+            while (messages.hasNext()) {
+                JSONObject message = messages.next();
+                if (message.getLong("id") != messageId) continue;
+                if (remove) messages.remove();
+                return message;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Get a channel, adopting it if the stand-in has not seen it yet. Bots
+     * pointed at the stand-in still see their guild's real channels on the
+     * gateway, so calls to those are accepted too.
+     *
+     * @param channelId The channel's ID
+     *
+     * @return The channel
+     */
+    private Channel channel(long channelId) {
+        return channels.computeIfAbsent(channelId, id -> new Channel(id, 0, TEXT, "channel-" + id));
+    }
+
+    private JSONObject toJson(Channel channel, int version) {
+        JSONObject json = new JSONObject();
+        synchronized (channel) {
+            json.put("id", Long.toString(channel.id));
+            json.put("type", channel.type);
+            if (channel.guildId != 0) json.put("guild_id", Long.toString(channel.guildId));
+            json.put("name", channel.name);
+            json.put("position", 0);
+            json.put("parent_id", channel.parentId == 0 ? JSONObject.NULL : Long.toString(channel.parentId));
+            json.put("nsfw", false);
+
+            JSONArray overwrites = new JSONArray();
+            for (Map.Entry<Long, long[]> entry : channel.overwrites.entrySet()) {
+                long[] overwrite = entry.getValue();
+                JSONObject item = new JSONObject();
+                item.put("id", Long.toString(entry.getKey()));
+                if (version >= V8) {
+                    item.put("type", (int) overwrite[0]);
+                    item.put("allow", Long.toString(overwrite[1]));
+                    item.put("deny", Long.toString(overwrite[2]));
+                } else {
+                    item.put("type", overwrite[0] == MEMBER ? "member" : "role");
+                    item.put("allow", overwrite[1]);
+                    item.put("deny", overwrite[2]);
+                }
+                overwrites.put(item);
+            }
+            json.put("permission_overwrites", overwrites);
+        }
+
+        if (channel.type == VOICE) {
+            json.put("bitrate", 64000);
+            json.put("user_limit", 0);
+        } else {
+            json.put("topic", JSONObject.NULL);
+            json.put("last_message_id", JSONObject.NULL);
+            json.put("rate_limit_per_user", 0);
+        }
+        return json;
+    }
+
+    private void putOverwrites(Channel channel, JSONArray overwrites) {
+        if (overwrites == null) return;
+        synchronized (channel) {
+            for (int i = 0; i < overwrites.length(); i++) {
+                JSONObject overwrite = overwrites.getJSONObject(i);
+                channel.overwrites.put(overwrite.getLong("id"), toOverwrite(overwrite));
+            }
+        }
+    }
+
+    /**
+     * Read an overwrite in any API version's format.
+     *
+     * @param overwrite The overwrite's JSON
+     *
+     * @return The overwrite's numeric type and its allow and deny bits
+     */
+    private static long[] toOverwrite(JSONObject overwrite) {
+        Object type = overwrite.opt("type");
+        long numericType = "member".equals(type) || Integer.valueOf(MEMBER).equals(type) ? MEMBER : ROLE;
+        return new long[]{numericType, overwrite.optLong("allow", 0), overwrite.optLong("deny", 0)};
+    }
+
+    private JSONObject botUser() {
+        return new JSONObject()
+            .put("id", Long.toString(botUserId))
+            .put("username", "Mentorbot")
+            .put("discriminator", "0000")
+            .put("avatar", JSONObject.NULL)
+            .put("bot", true);
+    }
+
+    /**
+     * Hand out a new snowflake. Its timestamp is the current time, so JDA
+     * can tell how old a message is, e.g. when bulk deleting.
+     *
+     * @return The ID
+     */
+    private long nextId() {
+        long now = (System.currentTimeMillis() - DISCORD_EPOCH) << 22;
+        return snowflakes.updateAndGet(last -> Math.max(last + 1, now));
+    }
+
+    private void sleepLatency() {
+        long latency = scenario.latencyMillis
+            + (scenario.jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(scenario.jitterMillis + 1) : 0);
+        if (latency <= 0) return;
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        byte[] body = renderStats().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * List the calls made to each route and how many were refused with a 429.
+     *
+     * @return The stats as text
+     */
+    String renderStats() {
+        TreeMap<String, long[]> counts = new TreeMap<>();
+        calls.forEach((route, count) -> counts.computeIfAbsent(route, k -> new long[2])[0] = count.sum());
+        refused.forEach((route, count) -> counts.computeIfAbsent(route, k -> new long[2])[1] = count.sum());
+
+        StringBuilder out = new StringBuilder();
+        long total = 0;
+        long totalRefused = 0;
+        for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+            out.append(String.format("  %-20s %7d calls   %5d refused%n",
+                entry.getKey(), entry.getValue()[0], entry.getValue()[1]));
+            total += entry.getValue()[0];
+            totalRefused += entry.getValue()[1];
+        }
+        return String.format("REST calls: %d, %d refused with a 429%n", total, totalRefused) + out;
+    }
+
+    private static void send(HttpExchange exchange, Reply reply) throws IOException {
+        if (reply.body == null) {
+            exchange.sendResponseHeaders(reply.status, -1);
+            return;
+        }
+        byte[] body = reply.body.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(reply.status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Reply error(int status, int code, String message) {
+        return new Reply(status, new JSONObject().put("code", code).put("message", message));
+    }
+
+    private static JSONObject readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            String body = new String(in.readAllBytes(), StandardCharsets.UTF_8).trim();
+            return body.startsWith("{") ? new JSONObject(body) : new JSONObject();
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new LinkedHashMap<>();
+        if (query == null) return params;
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) params.put(pair.substring(0, equals), pair.substring(equals + 1));
+        }
+        return params;
+    }
+
+    private static boolean isId(String part) {
+        return !part.isEmpty() && part.length() <= 20 && part.chars().allMatch(Character::isDigit);
+    }
+
+    private static String timestamp() {
+        return OffsetDateTime.ofInstant(Instant.now(), ZoneOffset.UTC).toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        Scenario scenario;
+        try {
+            scenario = Scenario.parse(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        LocalDiscord discord = new LocalDiscord(scenario);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.print(discord.renderStats())));
+        discord.start();
+        System.out.printf("Point the bot at it with MENTORBOT_REST_URL=http://127.0.0.1:%d%n", scenario.port);
+    }
+}
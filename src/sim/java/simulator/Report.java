@@ -0,0 +1,110 @@
+package simulator;
+
+import metrics.Histogram;
+import metrics.Metrics;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The results of a simulation run.
+ */
+class Report {
+    /**
+     * The commands the simulated users send
+     */
+    private static final String[] COMMANDS = {"queue", "ready", "finish"};
+
+    private final Scenario scenario;
+    private final boolean completed;
+    private final long elapsedNanos;
+    private final long commands;
+    private final int sessions;
+
+    /**
+     * How long each served mentee waited for their room, sorted
+     */
+    private final long[] waits;
+    private final FakeRest rest;
+    private final int roomChannels;
+
+    /**
+     * Constructs a report.
+     *
+     * @param scenario The scenario that was run
+     * @param completed True if every mentee had their session before the timeout
+     * @param elapsedNanos How long the sessions took
+     * @param commands The number of commands sent
+     * @param sessions The number of sessions that started
+     * @param waits How long each served mentee waited, in nanoseconds
+     * @param rest The REST layer the run used
+     * @param roomChannels The number of room channels left at the end
+     */
+    Report(Scenario scenario, boolean completed, long elapsedNanos, long commands, int sessions, long[] waits,
+           FakeRest rest, int roomChannels) {
+        this.scenario = scenario;
+        this.completed = completed;
+        this.elapsedNanos = elapsedNanos;
+        this.commands = commands;
+        this.sessions = sessions;
+        this.waits = waits.clone();
+        Arrays.sort(this.waits);
+        this.rest = rest;
+        this.roomChannels = roomChannels;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        double seconds = elapsedNanos / 1e9;
+        out.append(scenario).append("\n\n");
+        out.append(String.format("%s after %.1f s: %d of %d mentees served, %d sessions%n",
+            completed ? "Completed" : "Timed out", seconds, waits.length, scenario.mentees, sessions));
+        out.append(String.format("Commands: %d sent, %.1f per second%n", commands, commands / seconds));
+
+        // these are the same histograms the metrics endpoint serves, so percentiles are bucket estimates
+        out.append("Command latency, from receipt to handler return:\n");
+        for (String command : COMMANDS) {
+            Histogram latency = Metrics.commandLatency(command);
+            out.append(String.format("  %-8s %7d runs   p50 %8.2f ms   p99 %8.2f ms%n", command, latency.count(),
+                millis(latency.quantile(0.5)), millis(latency.quantile(0.99))));
+        }
+
+        out.append("Queue wait, from $queue to the room's prompt:\n");
+        if (waits.length == 0) {
+            out.append("  nobody was served\n");
+        } else {
+            out.append(String.format("  p50 %.0f ms   p99 %.0f ms   max %.0f ms%n",
+                millis(percentile(0.5)), millis(percentile(0.99)), millis(waits[waits.length - 1])));
+        }
+
+        Map<String, Long> calls = rest.getCalls();
+        long total = calls.values().stream().mapToLong(Long::longValue).sum();
+        double perSession = Math.max(1, sessions);
+        out.append(String.format("REST calls: %d, %.2f per session, %d held back by rate limits for %.1f s in total%n",
+            total, total / perSession, rest.getHeldBack(), rest.getHeldBackNanos() / 1e9));
+        for (Map.Entry<String, Long> entry : calls.entrySet()) {
+            out.append(String.format("  %-20s %7d   %6.2f per session%n",
+                entry.getKey(), entry.getValue(), entry.getValue() / perSession));
+        }
+        out.append(String.format("Room channels left at the end: %d%n", roomChannels));
+        return out.toString();
+    }
+
+    /**
+     * Get a percentile of the queue waits by the nearest-rank method.
+     *
+     * @param quantile The quantile, between 0 and 1
+     *
+     * @return The wait in nanoseconds
+     */
+    private long percentile(double quantile) {
+        int rank = (int) Math.ceil(quantile * waits.length);
+        return waits[Math.max(0, rank - 1)];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
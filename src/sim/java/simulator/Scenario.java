@@ -0,0 +1,206 @@
+package simulator;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The parameters of a simulated hackathon: how many mentees queue, how many
+ * mentors serve them, and how Discord's REST API behaves. The REST settings
+ * are shared by the simulator and the local Discord stand-in.
+ *
+ * Every setting can be given on the command line as `--name=value`, after an
+ * optional `--scenario=<preset>` that picks the starting values.
+ */
+class Scenario {
+    /**
+     * A rate limit bucket: at most `limit` requests per `resetMillis`.
+     */
+    static class Limit {
+        final int limit;
+        final long resetMillis;
+
+        Limit(int limit, long resetMillis) {
+            this.limit = limit;
+            this.resetMillis = resetMillis;
+        }
+
+        @Override
+        public String toString() {
+            return limit + "/" + resetMillis + "ms";
+        }
+    }
+
+    String name = "hackathon";
+
+    /**
+     * Number of mentees, each queueing once
+     */
+    int mentees = 2000;
+    int topics = 30;
+    int mentors = 50;
+
+    /**
+     * Mentees join their queues at random times within this window
+     */
+    long arrivalMillis = 10_000;
+
+    /**
+     * How long a mentor spends in a room before running $finish
+     */
+    long sessionMillis = 250;
+
+    /**
+     * How long a mentor waits before trying $ready again on an empty queue
+     */
+    long retryMillis = 200;
+
+    /**
+     * Round trip time of every REST call, plus up to jitterMillis more
+     */
+    long latencyMillis = 50;
+    long jitterMillis = 30;
+
+    long timeoutSeconds = 600;
+    long seed = 1;
+
+    /**
+     * The bot's dispatch mode, see Config.DISPATCH_MODE
+     */
+    String dispatch = "guild";
+
+    /**
+     * True to have every mentor mentor two neighbouring topics and run a
+     * plain $ready, which serves whoever waited longest in either
+     */
+    boolean anyTopic = false;
+
+    /**
+     * Port the local Discord REST stand-in listens on
+     */
+    int port = 8090;
+
+    /**
+     * Map from REST routes to their per-bucket limits. Discord does not
+     * publish most of its limits, so these approximate what bots observe.
+     * Routes without an entry are not rate limited.
+     */
+    final Map<String, Limit> rateLimits = new TreeMap<>(Map.ofEntries(
+        Map.entry(FakeRest.GLOBAL, new Limit(50, 1000)),
+        Map.entry("channel_create", new Limit(5, 1000)),
+        Map.entry("channel_edit", new Limit(10, 10_000)),
+        Map.entry("channel_delete", new Limit(5, 1000)),
+        Map.entry("permission_override", new Limit(5, 1000)),
+        Map.entry("invite", new Limit(5, 1000)),
+        Map.entry("role_create", new Limit(5, 1000)),
+        Map.entry("role_edit", new Limit(5, 1000)),
+        Map.entry("role_delete", new Limit(5, 1000)),
+        Map.entry("message", new Limit(5, 5000)),
+        Map.entry("message_history", new Limit(5, 1000)),
+        Map.entry("message_delete", new Limit(5, 1000)),
+        Map.entry("message_bulk_delete", new Limit(1, 1000)),
+        Map.entry("reaction", new Limit(1, 250))
+    ));
+
+    /**
+     * Build a scenario from command line arguments.
+     *
+     * @param args Arguments of the form `--name=value`
+     *
+     * @return The scenario
+     *
+     * @throws IllegalArgumentException If an argument is not understood
+     */
+    static Scenario parse(String[] args) {
+        Scenario scenario = new Scenario();
+        for (String arg : args) {
+            if (arg.startsWith("--scenario=")) scenario.preset(arg.substring("--scenario=".length()));
+        }
+
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (!arg.startsWith("--") || equals < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+
+            String key = arg.substring(2, equals);
+            String value = arg.substring(equals + 1);
+            switch (key) {
+                case "scenario" -> { }
+                case "mentees" -> scenario.mentees = Integer.parseInt(value);
+                case "topics" -> scenario.topics = Integer.parseInt(value);
+                case "mentors" -> scenario.mentors = Integer.parseInt(value);
+                case "arrival-ms" -> scenario.arrivalMillis = Long.parseLong(value);
+                case "session-ms" -> scenario.sessionMillis = Long.parseLong(value);
+                case "retry-ms" -> scenario.retryMillis = Long.parseLong(value);
+                case "latency-ms" -> scenario.latencyMillis = Long.parseLong(value);
+                case "jitter-ms" -> scenario.jitterMillis = Long.parseLong(value);
+                case "timeout-s" -> scenario.timeoutSeconds = Long.parseLong(value);
+                case "seed" -> scenario.seed = Long.parseLong(value);
+                case "dispatch" -> scenario.dispatch = value;
+                case "any-topic" -> scenario.anyTopic = Boolean.parseBoolean(value);
+                case "port" -> scenario.port = Integer.parseInt(value);
+                default -> {
+                    if (!key.startsWith("rate-")) throw new IllegalArgumentException("Unknown option --" + key);
+                    scenario.setRateLimit(key.substring("rate-".length()), value);
+                }
+            }
+        }
+
+        if (scenario.mentees < 1 || scenario.topics < 1 || scenario.mentors < 1) {
+            throw new IllegalArgumentException("A scenario needs at least one mentee, topic and mentor");
+        }
+        if (scenario.mentors < scenario.topics) {
+            // mentors are spread over topics, so fewer mentors would leave a queue unserved
+            throw new IllegalArgumentException("A scenario needs at least one mentor per topic");
+        }
+        return scenario;
+    }
+
+    /**
+     * Start from one of the built-in scenarios.
+     *
+     * @param preset The scenario's name
+     */
+    private void preset(String preset) {
+        name = preset;
+        switch (preset) {
+            case "hackathon" -> { }
+            case "burst" -> arrivalMillis = 0;  // everyone queues the moment the bot comes up
+            case "smoke" -> {
+                mentees = 100;
+                topics = 5;
+                mentors = 5;
+                arrivalMillis = 2000;
+            }
+            case "unlimited" -> rateLimits.clear();  // isolates the bot's own overhead
+            default -> throw new IllegalArgumentException("Unknown scenario " + preset);
+        }
+    }
+
+    /**
+     * Change a route's rate limit.
+     *
+     * @param route The route, or "global"
+     * @param value `limit/resetMillis`, or "none" to lift the limit
+     */
+    private void setRateLimit(String route, String value) {
+        if (value.equals("none")) {
+            rateLimits.remove(route);
+            return;
+        }
+
+        int slash = value.indexOf('/');
+        if (slash < 0) throw new IllegalArgumentException("Expected limit/resetMillis, got " + value);
+        rateLimits.put(route, new Limit(Integer.parseInt(value.substring(0, slash)),
+            Long.parseLong(value.substring(slash + 1))));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d mentees over %d topics, %d mentors, arrivals over %d ms, "
+                + "%d ms sessions, REST latency %d+%d ms, %s dispatch%s%nRate limits: %s",
+            name, mentees, topics, mentors, arrivalMillis, sessionMillis, latencyMillis, jitterMillis, dispatch,
+            anyTopic ? ", $ready across topics" : "",
+            rateLimits.isEmpty() ? "none" : rateLimits);
+    }
+}
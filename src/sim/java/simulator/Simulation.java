@@ -0,0 +1,257 @@
+package simulator;
+
+import entities.Topic;
+import info.Config;
+import listeners.MainEventListener;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.Role;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Replays a scenario against MainEventListener. Mentees join their topic's
+ * queue from a shared help desk channel; each mentor works from their own
+ * channel, running `$ready` until they are handed a room, then `$finish`
+ * in the room once their session is over.
+ *
+ * The simulation only sees what a Discord user would: it reacts to the
+ * messages the bot delivers through the fake REST layer.
+ */
+class Simulation {
+    /**
+     * Finds the first channel mention in a message, i.e. the room's text
+     * channel in the mentor's ready message
+     */
+    private static final Pattern CHANNEL_MENTION = Pattern.compile("<#(\\d+)>");
+
+    /**
+     * Finds the ticket number that every mentee puts in their queue message
+     */
+    private static final Pattern TICKET = Pattern.compile("ticket-(\\d+)");
+
+    /**
+     * How long to wait for REST calls still in flight once every session is
+     * over
+     */
+    private static final long DRAIN_MILLIS = 10_000;
+
+    private final Scenario scenario;
+    private final FakeRest rest;
+    private final FakeGuild guild;
+    private final MainEventListener listener;
+
+    /**
+     * Runs every simulated user action, one at a time
+     */
+    private final ScheduledExecutorService driver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "simulated-users");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String[] topicNames;
+    private final Member[] mentees;
+    private final Member[] mentors;
+    private final FakeChannel helpDesk;
+
+    /**
+     * Map from the IDs of the mentors' own channels to the mentor's index
+     */
+    private final ConcurrentHashMap<Long, Integer> desks = new ConcurrentHashMap<>();
+    private final FakeChannel[] deskChannels;
+
+    /**
+     * When each mentee sent `$queue`, from System.nanoTime()
+     */
+    private final AtomicLongArray queuedAt;
+
+    /**
+     * How long each mentee waited for their room, or -1 if they are still
+     * waiting
+     */
+    private final AtomicLongArray waits;
+
+    private final LongAdder commands = new LongAdder();
+    private final AtomicInteger sessionsStarted = new AtomicInteger();
+    private final CountDownLatch sessionsFinished;
+
+    /**
+     * Sets up the guild, its members and the bot for a scenario.
+     *
+     * @param scenario The scenario to run
+     */
+    Simulation(Scenario scenario) {
+        this.scenario = scenario;
+
+        // keep everything in memory and use the scenario's dispatch mode
+        Config.JOURNAL_DIR = "";
+        Config.DISPATCH_MODE = scenario.dispatch;
+
+        rest = new FakeRest(scenario);
+        guild = new FakeGuild(rest, 1_000_000_000L);
+        guild.onMessage(this::delivered);
+        helpDesk = guild.addTextChannel("help-desk");
+
+        topicNames = new String[scenario.topics];
+        Role[] topicRoles = new Role[scenario.topics];
+        for (int i = 0; i < scenario.topics; i++) {
+            topicNames[i] = "topic" + (i + 1);
+            topicRoles[i] = guild.addRole(Topic.PREFIX + topicNames[i]);
+        }
+
+        mentors = new Member[scenario.mentors];
+        deskChannels = new FakeChannel[scenario.mentors];
+        for (int i = 0; i < scenario.mentors; i++) {
+            mentors[i] = scenario.anyTopic
+                ? guild.addMember("mentor" + (i + 1), topicRoles[i % scenario.topics],
+                    topicRoles[(i + 1) % scenario.topics])
+                : guild.addMember("mentor" + (i + 1), topicRoles[i % scenario.topics]);
+            deskChannels[i] = guild.addTextChannel("desk-" + (i + 1));
+            desks.put(deskChannels[i].getId(), i);
+        }
+
+        mentees = new Member[scenario.mentees];
+        for (int i = 0; i < scenario.mentees; i++) {
+            mentees[i] = guild.addMember("mentee" + (i + 1));
+        }
+
+        queuedAt = new AtomicLongArray(scenario.mentees);
+        waits = new AtomicLongArray(scenario.mentees);
+        for (int i = 0; i < scenario.mentees; i++) {
+            waits.set(i, -1);
+        }
+        sessionsFinished = new CountDownLatch(scenario.mentees);
+
+        listener = new MainEventListener();
+    }
+
+    /**
+     * Run the scenario until every mentee had their session or the
+     * scenario's timeout passes.
+     *
+     * @return The results
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    Report run() throws InterruptedException {
+        long start = System.nanoTime();
+
+        Random random = new Random(scenario.seed);
+        for (int i = 0; i < scenario.mentees; i++) {
+            int mentee = i;
+            long arrival = scenario.arrivalMillis > 0 ? (long) (random.nextDouble() * scenario.arrivalMillis) : 0;
+            driver.schedule(() -> {
+                queuedAt.set(mentee, System.nanoTime());
+                send(mentees[mentee], helpDesk, String.format("$queue %s ticket-%d my build fails on the demo machine",
+                    topicNames[mentee % scenario.topics], mentee));
+            }, arrival, TimeUnit.MILLISECONDS);
+        }
+
+        for (int i = 0; i < scenario.mentors; i++) {
+            int mentor = i;
+            driver.execute(() -> ready(mentor));
+        }
+
+        boolean completed = sessionsFinished.await(scenario.timeoutSeconds, TimeUnit.SECONDS);
+        long elapsed = System.nanoTime() - start;
+
+        // let rooms finish recycling so their REST calls are counted
+        long drainUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(DRAIN_MILLIS);
+        while (rest.getInFlight() > 0 && System.nanoTime() - drainUntil < 0) {
+            Thread.sleep(50);
+        }
+        driver.shutdownNow();
+
+        long[] served = new long[scenario.mentees];
+        int count = 0;
+        for (int i = 0; i < scenario.mentees; i++) {
+            long wait = waits.get(i);
+            if (wait >= 0) served[count++] = wait;
+        }
+
+        return new Report(scenario, completed, elapsed, commands.sum(), sessionsStarted.get(),
+            Arrays.copyOf(served, count), rest, guild.getRoomChannelCount());
+    }
+
+    /**
+     * Have a mentor ask for their next mentee, unless every mentee already
+     * has been handed a room.
+     *
+     * @param mentor The mentor's index
+     */
+    private void ready(int mentor) {
+        if (sessionsStarted.get() >= scenario.mentees) return;
+        send(mentors[mentor], deskChannels[mentor],
+            scenario.anyTopic ? "$ready" : "$ready " + topicNames[mentor % scenario.topics]);
+    }
+
+    /**
+     * Send a command as a member.
+     *
+     * @param author The member sending the command
+     * @param channel The channel the command is sent in
+     * @param content The command
+     */
+    private void send(Member author, FakeChannel channel, String content) {
+        commands.increment();
+        listener.onGuildMessageReceived(guild.messageEvent(author, channel, content));
+    }
+
+    /**
+     * React to a message the bot delivered.
+     *
+     * @param channel The channel the message was delivered to
+     * @param content The message's content
+     */
+    private void delivered(FakeChannel channel, String content) {
+        Integer mentor = desks.get(channel.getId());
+        if (mentor != null) {
+            readyAnswered(mentor, content);
+            return;
+        }
+
+        if (!channel.isInCategory()) return;
+
+        // the mentee's question is posted in the room once it is open
+        Matcher ticket = TICKET.matcher(content);
+        if (ticket.find()) {
+            int mentee = Integer.parseInt(ticket.group(1));
+            waits.compareAndSet(mentee, -1, System.nanoTime() - queuedAt.get(mentee));
+        }
+    }
+
+    /**
+     * Handle the bot's answer to a mentor's `$ready`. If the mentor got a
+     * room, they run `$finish` in it after their session; otherwise they try
+     * again later.
+     *
+     * @param mentor The mentor's index
+     * @param content The bot's answer
+     */
+    private void readyAnswered(int mentor, String content) {
+        Matcher room = CHANNEL_MENTION.matcher(content);
+        if (!room.find()) {
+            driver.schedule(() -> ready(mentor), scenario.retryMillis, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        sessionsStarted.incrementAndGet();
+        FakeChannel roomChannel = guild.getChannel(Long.parseLong(room.group(1)));
+        driver.schedule(() -> {
+            send(mentors[mentor], roomChannel, "$finish");
+            sessionsFinished.countDown();
+            ready(mentor);
+        }, scenario.sessionMillis, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,25 @@
+package simulator;
+
+/**
+ * Runs a load scenario against the bot without Discord. Run it with
+ * `./gradlew simulate --args="--scenario=hackathon --mentees=2000"`; see
+ * Scenario for every option.
+ */
+public class Simulator {
+    public static void main(String[] args) throws InterruptedException {
+        Scenario scenario;
+        try {
+            scenario = Scenario.parse(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        System.out.println("Running the " + scenario.name + " scenario...");
+        System.out.print(new Simulation(scenario).run());
+
+        // the bot's own executors are not daemons
+        System.exit(0);
+    }
+}